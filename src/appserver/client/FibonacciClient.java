@@ -1,71 +1,56 @@
 package appserver.client;
 
-import appserver.comm.Message;
 import appserver.comm.MessageTypes;
 import appserver.job.Job;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
-import utils.PropertyHandler;
 /**
+ * Class [FibonacciClient] Computes the Fibonacci numbers 1 to 46 on the application server.
+ * All jobs are pipelined on one multiplexed connection, results are printed as they come back.
  *
  * @author aarongiroux
  */
-public class FibonacciClient extends Thread implements MessageTypes{
-    String host = null;
-    int port;
-    Integer number;
-
-    Properties properties;
+public class FibonacciClient implements MessageTypes{
     
-    public FibonacciClient(String serverPropertiesFile, int number) {
-        try {
-            this.number = number;
-            properties = new PropertyHandler(serverPropertiesFile);
-            host = properties.getProperty("HOST");
-            System.out.println("[FibonacciClient.FibonacciClient] Host: " + host);
-            port = Integer.parseInt(properties.getProperty("PORT"));
-            System.out.println("[FibonacciClient.FibonacciClient] Port: " + port);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+    JobClient jobClient;
+
+    public FibonacciClient(JobClient jobClient) {
+        this.jobClient = jobClient;
     }
     
-    @Override
-    public void run() {
-        try { 
-            // connect to application server
-            Socket server = new Socket(host, port);
-            
-            // hard-coded string of class, aka tool name ... plus one argument
-            String classString = "appserver.job.impl.Fibonacci";
-            
-            // create job and job request message
-            Job job = new Job(classString, number);
-            Message message = new Message(JOB_REQUEST, job);
-            
-            // sending job out to the application server in a message
-            ObjectOutputStream writeToNet = new ObjectOutputStream(server.getOutputStream());
-            writeToNet.writeObject(message);
-            
-            // reading result back in from application server
-            // for simplicity, the result is not encapsulated in a message
-            ObjectInputStream readFromNet = new ObjectInputStream(server.getInputStream());
-            Integer result = (Integer) readFromNet.readObject();
-            System.out.println("Fibonacci of " + number + ": " + result);
-        } catch (Exception ex) {
-            System.err.println("[FibonacciClient.run] Error occurred");
-            ex.printStackTrace();
-        }
+    public CompletableFuture<Void> run(int number) {
+        // hard-coded string of class, aka tool name ... plus one argument
+        String classString = "appserver.job.impl.Fibonacci";
+
+        // create job and send it out, the connection is not blocked while it is running
+        Job job = new Job(classString, number);
+        return jobClient.submit(job).handle((result, ex) -> {
+            if (ex != null) {
+                System.err.println("[FibonacciClient.run] Error occurred");
+                ex.printStackTrace();
+            } else {
+                System.out.println("Fibonacci of " + number + ": " + result);
+            }
+            return null;
+        });
     }
     
     public static void main(String[] args) {
         
-       for (int i=46; i>0; i--)
-       {
-           (new FibonacciClient("../../config/Server.properties", i)).start();
-       }
+        String serverPropertiesFile = args.length == 1 ? args[0] : "../../config/Server.properties";
+        try (JobClient jobClient = new JobClient(serverPropertiesFile)) {
+            FibonacciClient client = new FibonacciClient(jobClient);
+
+            CompletableFuture<?>[] jobs = new CompletableFuture<?>[46];
+            for (int i=46; i>0; i--)
+            {
+                jobs[46 - i] = client.run(i);
+            }
+            // wait for all results before closing the connection
+            CompletableFuture.allOf(jobs).join();
+        } catch (Exception ex) {
+            System.err.println("[FibonacciClient.main] Error occurred");
+            ex.printStackTrace();
+        }
     }  
 }
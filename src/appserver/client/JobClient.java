@@ -0,0 +1,184 @@
+package appserver.client;
+
+import appserver.comm.Message;
+import appserver.comm.MessageChannelFactory;
+import appserver.comm.MultiplexedConnection;
+import appserver.comm.WireCodec;
+import appserver.job.Job;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import utils.PropertyHandler;
+
+/**
+ * Class [JobClient] Client side of the multiplexed job protocol. All jobs share one connection
+ * to the application server; results are delivered as they come back, in any order.
+ */
+public class JobClient implements AutoCloseable {
+
+    MultiplexedConnection connection;
+
+    public JobClient(String host, int port) throws IOException {
+        this(host, port, WireCodec.CODEC_BINARY);
+    }
+
+    public JobClient(String host, int port, int codec) throws IOException {
+        connection = new MultiplexedConnection(host, port, codec);
+    }
+
+    /**
+     * A client whose jobs count towards the given tenant's share and quotas at the server, rather than
+     * this connection's own
+     */
+    public JobClient(String host, int port, String tenant) throws IOException {
+        this(host, port);
+        connection.send(Message.TENANT, tenant);
+    }
+
+    public JobClient(String serverPropertiesFile) throws IOException {
+        this(new PropertyHandler(serverPropertiesFile));
+    }
+
+    private JobClient(Properties properties) throws IOException {
+        this(properties.getProperty("HOST"), Integer.parseInt(properties.getProperty("PORT").trim()),
+                MessageChannelFactory.codecForName(properties.getProperty("WIRE_CODEC")));
+    }
+
+    /**
+     * Submits a job, the future completes with the tool's result or fails with a JobFailedException.
+     * A job with a timeout fails once it has run past its deadline; cancelling the future cancels the job.
+     */
+    public CompletableFuture<Object> submit(Job job) {
+        return cancellable(connection.request(Message.JOB_REQUEST, job), JobClient::resultOf);
+    }
+
+    /**
+     * Runs a tool once for each of the parameters, spread across the satellites; the future completes with
+     * the results in the order of the parameters, or fails if any of them failed
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<Object>> submitBatch(String toolName, List<?> parameters) {
+        return cancellable(connection.request(Message.JOB_BATCH, new Job(toolName, parameters)), response -> (List<Object>) resultOf(response));
+    }
+
+    /**
+     * Submits a job to be run in the background, the future completes with the job's id as soon as the server
+     * has accepted it. The job's result is asked for with <code>result()</code>, on this or any other connection.
+     */
+    public CompletableFuture<Long> start(Job job) {
+        return connection.request(Message.JOB_SUBMIT, job).thenApply(response -> {
+            if (response.getType() == Message.JOB_SUBMIT) {
+                return (Long) response.getContent();
+            }
+            resultOf(response);
+            throw new JobFailedException("Unexpected response " + response.getType());
+        });
+    }
+
+    /**
+     * The status of a job submitted with <code>start()</code>: PENDING, DONE, FAILED or UNKNOWN, the latter
+     * if there is no such job or its result was dropped already
+     */
+    public CompletableFuture<String> status(long jobId) {
+        return connection.request(Message.JOB_STATUS, jobId).thenApply(response -> (String) response.getContent());
+    }
+
+    /**
+     * The result of a job submitted with <code>start()</code>; the future completes when the job is done
+     */
+    public CompletableFuture<Object> result(long jobId) {
+        return connection.request(Message.JOB_RESULT, jobId).thenApply(JobClient::resultOf);
+    }
+
+    /**
+     * Adds a tool to the server's catalog; satellites load it and run the warm-up job with the given
+     * parameters before their first real job, null parameters skip the warm-up
+     */
+    public CompletableFuture<Void> registerTool(String toolName, Object warmUpParameters) {
+        return connection.request(Message.REGISTER_TOOL, new Job(toolName, warmUpParameters)).thenAccept(response -> {
+        });
+    }
+
+    /**
+     * The tools in the server's catalog, with their warm-up parameters
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<Job>> listTools() {
+        return connection.request(Message.LIST_TOOLS, null).thenApply(response -> (List<Job>) response.getContent());
+    }
+
+    /**
+     * Current figures of the server: dispatch queue, satellite load and so on
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Map<String, Object>> metrics() {
+        return connection.request(Message.METRICS, null).thenApply(response -> (Map<String, Object>) response.getContent());
+    }
+
+    /**
+     * The result of a request; cancelling it cancels the request on the server
+     */
+    private static <T> CompletableFuture<T> cancellable(CompletableFuture<Message> response, Function<Message, T> result) {
+        CompletableFuture<T> future = response.thenApply(result);
+        future.whenComplete((value, e) -> {
+            if (future.isCancelled()) {
+                response.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Unwraps the response to a job request
+     */
+    static Object resultOf(Message response) {
+        if (response.getType() == Message.JOB_RESULT) {
+            return response.getContent();
+        }
+        if (response.getType() == Message.OVERLOADED) {
+            throw new ServerBusyException((Integer) response.getContent());
+        }
+        throw new JobFailedException(String.valueOf(response.getContent()));
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    /**
+     * Class [JobFailedException] Raised when the server or a satellite reports a failed job
+     */
+    public static class JobFailedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public JobFailedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Class [ServerBusyException] Raised when the server rejected a job because it is overloaded;
+     * the job was not run and may be submitted again after the given time
+     */
+    public static class ServerBusyException extends JobFailedException {
+
+        private static final long serialVersionUID = 1L;
+
+        final int retryAfterMillis;
+
+        public ServerBusyException(int retryAfterMillis) {
+            super("Server overloaded, retry after " + retryAfterMillis + " ms");
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public int getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+}
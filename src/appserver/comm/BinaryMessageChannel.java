@@ -0,0 +1,84 @@
+package appserver.comm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Class [BinaryMessageChannel] Message channel using the length-prefixed frames of WireCodec.
+ * Every message travels as an int length followed by the encoded message.
+ */
+public class BinaryMessageChannel implements MessageChannel {
+
+    // frames larger than this are taken as a broken stream
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    final Socket socket;
+    final DataInputStream readFromNet;
+    final DataOutputStream writeToNet;
+
+    // encoding buffer, reused for every message written, guarded by writeToNet
+    private final WireCodec.Encoder encoder = new WireCodec.Encoder();
+
+    public BinaryMessageChannel(Socket socket, InputStream in, OutputStream out) {
+        this.socket = socket;
+        readFromNet = new DataInputStream(in);
+        writeToNet = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    @Override
+    public Message read() throws IOException {
+        return WireCodec.decodeMessage(readFrame());
+    }
+
+    /**
+     * Reads the bytes of the next frame, without the length prefix
+     */
+    public byte[] readFrame() throws IOException {
+        int length = readFromNet.readInt();
+        // every frame has a header, the type and the correlation id are read without further checks
+        if (length < WireCodec.CONTENT_OFFSET || length > MAX_FRAME_SIZE) {
+            throw new IOException("[BinaryMessageChannel.readFrame] Bad frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        readFromNet.readFully(frame);
+        return frame;
+    }
+
+    @Override
+    public void write(Message message) throws IOException {
+        synchronized (writeToNet) {
+            encoder.reset();
+            encoder.writeMessage(message);
+            writeFrame(encoder.buffer(), 0, encoder.size());
+        }
+    }
+
+    /**
+     * Writes the given bytes as one frame
+     */
+    public void writeFrame(byte[] frame, int offset, int length) throws IOException {
+        synchronized (writeToNet) {
+            writeToNet.writeInt(length);
+            writeToNet.write(frame, offset, length);
+            writeToNet.flush();
+        }
+    }
+
+    @Override
+    public int getCodec() {
+        return WireCodec.CODEC_BINARY;
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+}
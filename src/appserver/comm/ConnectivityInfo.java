@@ -3,7 +3,9 @@ package appserver.comm;
 import java.io.Serializable;
 
 /**
- * Class [ConnectivityInfo] Wraps server connectivity information
+ * Class [ConnectivityInfo] Wraps server connectivity information.
+ * Satellites also advertise their capacity: cores, the number of jobs they run at a time and
+ * an optional static weight, 0 meaning the weight is derived from the other two.
  * 
  * @author Dr.-Ing. Wolf-Dieter Otte
  */
@@ -12,6 +14,9 @@ public class ConnectivityInfo implements Serializable {
     String host = null;
     int port = 0;
     String name = null;
+    int cores = 0;
+    int maxConcurrentJobs = 0;
+    double weight = 0;
 
     public void setPort(int port) {
         this.port = port;
@@ -36,4 +41,45 @@ public class ConnectivityInfo implements Serializable {
     public void setName(String name) {
         this.name = name;
     }
+
+    public int getCores() {
+        return cores;
+    }
+
+    public void setCores(int cores) {
+        this.cores = cores;
+    }
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * The share of jobs relative to other satellites: the static weight if there is one,
+     * else the number of concurrent jobs, else the number of cores, else 1
+     */
+    public double getEffectiveWeight() {
+        if (weight > 0) {
+            return weight;
+        }
+        if (maxConcurrentJobs > 0) {
+            return maxConcurrentJobs;
+        }
+        if (cores > 0) {
+            return cores;
+        }
+        return 1;
+    }
 }
@@ -6,6 +6,8 @@ import java.io.Serializable;
  * Class [Message] Defines a generic Message that has a message type and content.
  * Instances of this class can be sent over a network, using object streams.
  * Message types are defined in MessageTypes
+ * Requests that carry a correlation id can be pipelined on one connection, the response to such
+ * a request (JOB_RESULT or JOB_ERROR) carries the same id and may arrive out of order.
  * 
  * @author Dr.-Ing. Wolf-Dieter Otte
  */
@@ -15,12 +17,19 @@ public class Message implements MessageTypes, Serializable {
     int type;
     // contains the content that is specific to a certain message type
     Object content;
+    // matches a response to its request on multiplexed connections, 0 for a plain one-shot request
+    long correlationId;
 
     public Message(int type, Object content) {
         this.type = type;
         this.content = content;
     }
 
+    public Message(int type, Object content, long correlationId) {
+        this(type, content);
+        this.correlationId = correlationId;
+    }
+
     public Message() {
     }
     
@@ -41,4 +50,13 @@ public class Message implements MessageTypes, Serializable {
     public Object getContent() {
         return content;
     }
+
+    // getter and setter methods for correlation id
+    public void setCorrelationId(long correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
 }
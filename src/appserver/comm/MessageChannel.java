@@ -0,0 +1,28 @@
+package appserver.comm;
+
+import java.io.IOException;
+
+/**
+ * Interface [MessageChannel] A connection that carries Message objects, independent of the wire format.
+ * Writing is thread-safe, so that responses of concurrent jobs can share one channel.
+ * Channels are created through MessageChannelFactory, which negotiates the wire format.
+ */
+public interface MessageChannel {
+
+    /**
+     * Reads the next message, blocks until one is there; throws EOFException when the peer closed the channel
+     */
+    public Message read() throws IOException;
+
+    /**
+     * Writes a message and flushes it to the network
+     */
+    public void write(Message message) throws IOException;
+
+    /**
+     * Wire format of this channel, one of the WireCodec.CODEC_* constants
+     */
+    public int getCodec();
+
+    public void close();
+}
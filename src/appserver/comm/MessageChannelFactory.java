@@ -0,0 +1,93 @@
+package appserver.comm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Class [MessageChannelFactory] Negotiates the wire format of a new connection.
+ * <p>
+ * The connecting side sends a magic number and the codec it wants to use, the accepting side
+ * answers with the codec it agrees to. Peers that start right away with a Java serialization
+ * stream (plain clients) are recognized by the stream's magic and get an object channel.
+ */
+public class MessageChannelFactory {
+
+    // "APS1", sent as the first four bytes of a negotiated connection
+    public static final int MAGIC = 0x41505331;
+    // first two bytes of every Java serialization stream
+    static final int SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * Connecting side: asks for the given codec and returns a channel using what the peer agreed to
+     */
+    public static MessageChannel connect(Socket socket, int codec) throws IOException {
+        socket.setTcpNoDelay(true);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        DataOutputStream handshake = new DataOutputStream(out);
+        handshake.writeInt(MAGIC);
+        handshake.writeByte(codec);
+        handshake.flush();
+
+        int agreedCodec = in.read();
+        if (agreedCodec == -1) {
+            throw new IOException("[MessageChannelFactory.connect] Connection closed during handshake");
+        }
+        return create(socket, agreedCodec, in, out);
+    }
+
+    /**
+     * Accepting side: detects plain object stream peers, otherwise answers the handshake
+     */
+    public static MessageChannel accept(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        // peek at the first two bytes
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (first == -1 || second == -1) {
+            throw new IOException("[MessageChannelFactory.accept] Connection closed during handshake");
+        }
+        if (((first << 8) | second) == SERIALIZATION_MAGIC) {
+            return new ObjectMessageChannel(socket, in, out);
+        }
+
+        DataInputStream handshake = new DataInputStream(in);
+        if (handshake.readInt() != MAGIC) {
+            throw new IOException("[MessageChannelFactory.accept] Unknown protocol");
+        }
+        int codec = handshake.readUnsignedByte();
+        int agreedCodec = (codec == WireCodec.CODEC_BINARY) ? WireCodec.CODEC_BINARY : WireCodec.CODEC_JAVA;
+        out.write(agreedCodec);
+        out.flush();
+
+        return create(socket, agreedCodec, in, out);
+    }
+
+    /**
+     * Maps a codec name as used in property files to its constant, unknown names fall back to Java serialization
+     */
+    public static int codecForName(String name) {
+        if (name == null || name.trim().equalsIgnoreCase("binary")) {
+            return WireCodec.CODEC_BINARY;
+        }
+        return WireCodec.CODEC_JAVA;
+    }
+
+    private static MessageChannel create(Socket socket, int codec, InputStream in, OutputStream out) throws IOException {
+        if (codec == WireCodec.CODEC_BINARY) {
+            return new BinaryMessageChannel(socket, in, out);
+        }
+        return new ObjectMessageChannel(socket, in, out);
+    }
+}
@@ -10,8 +10,23 @@ package appserver.comm;
 public interface MessageTypes {
     
     public static int JOB_REQUEST = 1;
- // public static int LIST_TOOLS = 2;
+    public static int LIST_TOOLS = 2;
     public static int REGISTER_SATELLITE = 3;
- // public static int UNREGISTER_SATELLITE = 4;
- // public static int REGISTER_TOOL = 5;   
+    public static int UNREGISTER_SATELLITE = 4;
+    public static int REGISTER_TOOL = 5;
+    public static int PING = 6;
+    public static int JOB_RESULT = 7;
+    public static int JOB_ERROR = 8;
+    public static int HEARTBEAT = 9;
+    public static int UPDATE_CAPACITY = 10;
+    public static int OVERLOADED = 11;
+    public static int METRICS = 12;
+    public static int JOB_SUBMIT = 13;
+    public static int JOB_STATUS = 14;
+    public static int JOB_BATCH = 15;
+    public static int DETERMINISTIC_TOOL = 16;
+    public static int IDEMPOTENT_TOOL = 17;
+    public static int CANCEL_JOB = 18;
+    public static int TENANT = 19;
+    public static int SATELLITE_METRICS = 20;
 }
@@ -0,0 +1,220 @@
+package appserver.comm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class [MultiplexedConnection] The requesting end of a connection that carries many requests at once.
+ * Every request is tagged with a fresh correlation id, a reader thread hands the responses to the
+ * waiting requests in whatever order they arrive.
+ */
+public class MultiplexedConnection implements MessageTypes {
+
+    final MessageChannel channel;
+
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    public MultiplexedConnection(String host, int port) throws IOException {
+        this(host, port, WireCodec.CODEC_BINARY);
+    }
+
+    public MultiplexedConnection(String host, int port, int codec) throws IOException {
+        channel = MessageChannelFactory.connect(new Socket(host, port), codec);
+
+        Thread reader = new Thread(this::readResponses, "MultiplexedConnection-" + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a request; the future completes with the response carrying the same correlation id.
+     * Cancelling the future cancels the request on the other side.
+     */
+    public CompletableFuture<Message> request(int type, Object content) {
+        CompletableFuture<Message> response = new CompletableFuture<>();
+        long correlationId = register(new Pending(response, null));
+        response.whenComplete((message, e) -> {
+            if (response.isCancelled()) {
+                cancel(correlationId);
+            }
+        });
+
+        try {
+            checkOpen();
+            channel.write(new Message(type, content, correlationId));
+        } catch (IOException e) {
+            fail(correlationId, e);
+        }
+        return response;
+    }
+
+    /**
+     * Sends an encoded message as is, only its correlation id is overwritten; the future completes
+     * with the encoded response. On binary channels the payload is neither decoded nor copied.
+     */
+    public CompletableFuture<byte[]> requestFrame(byte[] frame) {
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        long correlationId = register(new Pending(null, response));
+
+        try {
+            checkOpen();
+            // also on object channels, the caller may read the correlation id from the frame, e.g. to cancel the request
+            WireCodec.setCorrelationId(frame, correlationId);
+            if (channel instanceof BinaryMessageChannel) {
+                ((BinaryMessageChannel) channel).writeFrame(frame, 0, frame.length);
+            } else {
+                channel.write(WireCodec.decodeMessage(frame));
+            }
+        } catch (IOException e) {
+            fail(correlationId, e);
+        }
+        return response;
+    }
+
+    /**
+     * Sends a message that is not answered, e.g. to set up the connection
+     */
+    public void send(int type, Object content) throws IOException {
+        checkOpen();
+        channel.write(new Message(type, content));
+    }
+
+    /**
+     * Asks the other side to stop working on a request; the request still gets its response, usually JOB_ERROR
+     */
+    public void cancel(long correlationId) {
+        try {
+            checkOpen();
+            channel.write(new Message(CANCEL_JOB, correlationId));
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * Number of requests that are still waiting for their response
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Closes the connection, requests still waiting fail
+     */
+    public void close() {
+        closed = true;
+        channel.close();
+
+        IOException closedException = new IOException("[MultiplexedConnection] Connection closed");
+        for (Long correlationId : pending.keySet()) {
+            Pending request = pending.remove(correlationId);
+            if (request != null) {
+                request.fail(closedException);
+            }
+        }
+    }
+
+    private long register(Pending request) {
+        long correlationId = nextCorrelationId.incrementAndGet();
+        pending.put(correlationId, request);
+        return correlationId;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("[MultiplexedConnection] Connection closed");
+        }
+    }
+
+    private void fail(long correlationId, IOException e) {
+        Pending request = pending.remove(correlationId);
+        if (request != null) {
+            request.fail(e);
+        }
+        close();
+    }
+
+    private void readResponses() {
+        try {
+            while (!closed) {
+                // binary responses are only decoded if the request asks for a message
+                if (channel instanceof BinaryMessageChannel) {
+                    byte[] frame = ((BinaryMessageChannel) channel).readFrame();
+                    Pending request = lookup(WireCodec.getCorrelationId(frame));
+                    if (request != null) {
+                        request.complete(frame);
+                    }
+                } else {
+                    Message message = channel.read();
+                    Pending request = lookup(message.getCorrelationId());
+                    if (request != null) {
+                        request.complete(message);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // closed by the other side
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println(e);
+            }
+        }
+        close();
+    }
+
+    private Pending lookup(long correlationId) {
+        Pending request = pending.remove(correlationId);
+        if (request == null) {
+            System.err.println("[MultiplexedConnection] Dropping response for unknown request " + correlationId);
+        }
+        return request;
+    }
+
+    /**
+     * Class [Pending] A request waiting for its response, either as message or as encoded frame
+     */
+    private static class Pending {
+
+        final CompletableFuture<Message> message;
+        final CompletableFuture<byte[]> frame;
+
+        Pending(CompletableFuture<Message> message, CompletableFuture<byte[]> frame) {
+            this.message = message;
+            this.frame = frame;
+        }
+
+        void complete(byte[] response) throws IOException {
+            if (frame != null) {
+                frame.complete(response);
+            } else {
+                message.complete(WireCodec.decodeMessage(response));
+            }
+        }
+
+        void complete(Message response) throws IOException {
+            if (message != null) {
+                message.complete(response);
+            } else {
+                frame.complete(WireCodec.encodeMessage(response));
+            }
+        }
+
+        void fail(IOException e) {
+            if (frame != null) {
+                frame.completeExceptionally(e);
+            } else {
+                message.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package appserver.comm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Class [ObjectMessageChannel] Message channel based on Java serialization, i.e. object streams.
+ * This is the original wire format, still used by plain clients and as fallback for peers
+ * that do not speak the binary codec.
+ */
+public class ObjectMessageChannel implements MessageChannel {
+
+    final Socket socket;
+    final ObjectOutputStream writeToNet;
+    final ObjectInputStream readFromNet;
+
+    public ObjectMessageChannel(Socket socket, InputStream in, OutputStream out) throws IOException {
+        this.socket = socket;
+
+        // open object streams, the output stream first, as the other side does the same
+        writeToNet = new ObjectOutputStream(out);
+        writeToNet.flush();
+        readFromNet = new ObjectInputStream(in);
+    }
+
+    @Override
+    public Message read() throws IOException {
+        try {
+            return (Message) readFromNet.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("[ObjectMessageChannel.read] Not a message: " + e);
+        }
+    }
+
+    @Override
+    public void write(Message message) throws IOException {
+        writeObject(message);
+    }
+
+    /**
+     * Writes any object; plain clients get their results this way, without a message around them
+     */
+    public void writeObject(Object object) throws IOException {
+        synchronized (writeToNet) {
+            writeToNet.writeObject(object);
+            // do not let the stream's handle table grow with every message
+            writeToNet.reset();
+            writeToNet.flush();
+        }
+    }
+
+    @Override
+    public int getCodec() {
+        return WireCodec.CODEC_JAVA;
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+}
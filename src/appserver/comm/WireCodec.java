@@ -0,0 +1,439 @@
+package appserver.comm;
+
+import appserver.job.Job;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class [WireCodec] Compact binary encoding of Message, Job and ConnectivityInfo.
+ * <p>
+ * A message is encoded as its type (byte), its correlation id (long) and its content as a tagged value.
+ * Values of the common types, i.e. primitive wrappers, String, byte[] and ArrayLists of those, are written
+ * directly; any other Serializable value, including other lists and subclasses of Job, falls back to Java
+ * serialization inside the frame, so that it is decoded with its own class.
+ * All numbers are big-endian, strings are UTF-8 with an int length prefix.
+ */
+public class WireCodec {
+
+    // codecs that can be negotiated for a connection
+    public static final int CODEC_BINARY = 1;
+    public static final int CODEC_JAVA = 2;
+
+    // value tags
+    static final byte NULL = 0;
+    static final byte INTEGER = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte FLOAT = 4;
+    static final byte SHORT = 5;
+    static final byte BYTE = 6;
+    static final byte CHARACTER = 7;
+    static final byte BOOLEAN = 8;
+    static final byte STRING = 9;
+    static final byte BYTES = 10;
+    static final byte JOB = 11;
+    static final byte CONNECTIVITY_INFO = 12;
+    static final byte LIST = 13;
+    // a job with a timeout or a priority other than normal
+    static final byte SCHEDULED_JOB = 14;
+    static final byte SERIALIZED = 127;
+
+    // offsets inside an encoded message
+    public static final int TYPE_OFFSET = 0;
+    public static final int CORRELATION_ID_OFFSET = 1;
+    public static final int CONTENT_OFFSET = 9;
+
+    /**
+     * Reads the message type of an encoded message, without decoding it
+     */
+    public static int getType(byte[] frame) {
+        return frame[TYPE_OFFSET];
+    }
+
+    /**
+     * Overwrites the message type of an encoded message in place
+     */
+    public static void setType(byte[] frame, int type) {
+        frame[TYPE_OFFSET] = (byte) type;
+    }
+
+    /**
+     * Reads the correlation id of an encoded message, without decoding it
+     */
+    public static long getCorrelationId(byte[] frame) {
+        long correlationId = 0;
+        for (int i = CORRELATION_ID_OFFSET; i < CORRELATION_ID_OFFSET + 8; i++) {
+            correlationId = (correlationId << 8) | (frame[i] & 0xff);
+        }
+        return correlationId;
+    }
+
+    /**
+     * Overwrites the correlation id of an encoded message in place
+     */
+    public static void setCorrelationId(byte[] frame, long correlationId) {
+        for (int i = CORRELATION_ID_OFFSET + 7; i >= CORRELATION_ID_OFFSET; i--) {
+            frame[i] = (byte) correlationId;
+            correlationId >>>= 8;
+        }
+    }
+
+    /**
+     * Reads the tool name of an encoded job request, null if the message does not carry a job.
+     * Only the header is looked at, the job's parameters are left alone.
+     */
+    public static String getToolName(byte[] frame) throws IOException {
+        int offset = getJobOffset(frame);
+        if (offset < 0) {
+            return null;
+        }
+        return new Decoder(frame, offset, frame.length - offset).readString();
+    }
+
+    /**
+     * Reads the timeout of an encoded job request, 0 if it has none or the message does not carry a job
+     */
+    public static long getTimeout(byte[] frame) {
+        if (frame.length <= CONTENT_OFFSET + 9 || frame[CONTENT_OFFSET] != SCHEDULED_JOB) {
+            return 0;
+        }
+        long timeout = 0;
+        for (int i = CONTENT_OFFSET + 1; i < CONTENT_OFFSET + 9; i++) {
+            timeout = (timeout << 8) | (frame[i] & 0xff);
+        }
+        return timeout;
+    }
+
+    /**
+     * Reads the priority class of an encoded job request, <code>Job.NORMAL</code> if it has none or the
+     * message does not carry a job
+     */
+    public static int getPriority(byte[] frame) {
+        if (frame.length <= CONTENT_OFFSET + 9 || frame[CONTENT_OFFSET] != SCHEDULED_JOB) {
+            return Job.NORMAL;
+        }
+        return frame[CONTENT_OFFSET + 9];
+    }
+
+    /**
+     * Offset of the tool name of an encoded job request, followed by the parameters; -1 if the message
+     * does not carry a job
+     */
+    public static int getJobOffset(byte[] frame) {
+        if (frame.length <= CONTENT_OFFSET) {
+            return -1;
+        }
+        if (frame[CONTENT_OFFSET] == JOB) {
+            return CONTENT_OFFSET + 1;
+        }
+        if (frame[CONTENT_OFFSET] == SCHEDULED_JOB) {
+            return CONTENT_OFFSET + 10;
+        }
+        return -1;
+    }
+
+    public static byte[] encodeMessage(Message message) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.writeMessage(message);
+        return Arrays.copyOf(encoder.buffer(), encoder.size());
+    }
+
+    public static Message decodeMessage(byte[] frame) throws IOException {
+        return new Decoder(frame, 0, frame.length).readMessage();
+    }
+
+    /**
+     * Class [Encoder] Writes into a growable byte array, which can be reused after <code>reset()</code>
+     */
+    public static class Encoder {
+
+        private byte[] buffer = new byte[256];
+        private int size = 0;
+
+        public void reset() {
+            size = 0;
+        }
+
+        public byte[] buffer() {
+            return buffer;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void writeMessage(Message message) throws IOException {
+            writeByte(message.getType());
+            writeLong(message.getCorrelationId());
+            writeValue(message.getContent());
+        }
+
+        public void writeValue(Object value) throws IOException {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof Integer) {
+                writeByte(INTEGER);
+                writeInt((Integer) value);
+            } else if (value instanceof String) {
+                writeByte(STRING);
+                writeString((String) value);
+            } else if (value.getClass() == Job.class) {
+                Job job = (Job) value;
+                if (job.getTimeoutMillis() > 0 || job.getPriority() != Job.NORMAL) {
+                    writeByte(SCHEDULED_JOB);
+                    writeLong(job.getTimeoutMillis());
+                    writeByte(job.getPriority());
+                } else {
+                    writeByte(JOB);
+                }
+                writeString(job.getToolName());
+                writeValue(job.getParameters());
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeLong((Long) value);
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                writeByte(BYTES);
+                writeInt(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+            } else if (value instanceof Double) {
+                writeByte(DOUBLE);
+                writeLong(Double.doubleToLongBits((Double) value));
+            } else if (value instanceof Boolean) {
+                writeByte(BOOLEAN);
+                writeByte((Boolean) value ? 1 : 0);
+            } else if (value instanceof ConnectivityInfo) {
+                ConnectivityInfo info = (ConnectivityInfo) value;
+                writeByte(CONNECTIVITY_INFO);
+                writeString(info.getName());
+                writeString(info.getHost());
+                writeInt(info.getPort());
+                writeInt(info.getCores());
+                writeInt(info.getMaxConcurrentJobs());
+                writeLong(Double.doubleToLongBits(info.getWeight()));
+            } else if (value instanceof Float) {
+                writeByte(FLOAT);
+                writeInt(Float.floatToIntBits((Float) value));
+            } else if (value instanceof Short) {
+                writeByte(SHORT);
+                writeShort((Short) value);
+            } else if (value instanceof Byte) {
+                writeByte(BYTE);
+                writeByte((Byte) value);
+            } else if (value instanceof Character) {
+                writeByte(CHARACTER);
+                writeShort((Character) value);
+            } else if (value.getClass() == ArrayList.class) {
+                // e.g. the parameters of a batch, each element is tagged on its own; it is decoded as an ArrayList
+                List<?> list = (List<?>) value;
+                writeByte(LIST);
+                writeInt(list.size());
+                for (Object element : list) {
+                    writeValue(element);
+                }
+            } else if (value instanceof Serializable) {
+                // fallback for everything else
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(value);
+                }
+                writeByte(SERIALIZED);
+                writeInt(bytes.size());
+                writeBytes(bytes.toByteArray(), 0, bytes.size());
+            } else {
+                throw new IOException("[WireCodec.writeValue] Cannot encode " + value.getClass().getName());
+            }
+        }
+
+        /**
+         * Strings are written with their length, -1 stands for null
+         */
+        public void writeString(String string) {
+            if (string == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        public void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeShort(int value) {
+            ensureCapacity(2);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeInt(int value) {
+            ensureCapacity(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        public void writeBytes(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+            }
+        }
+    }
+
+    /**
+     * Class [Decoder] Reads from a byte array
+     */
+    public static class Decoder {
+
+        private final byte[] buffer;
+        private int position;
+        private final int limit;
+
+        public Decoder(byte[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        public int position() {
+            return position;
+        }
+
+        public Message readMessage() throws IOException {
+            int type = readByte();
+            long correlationId = readLong();
+            return new Message(type, readValue(), correlationId);
+        }
+
+        public Object readValue() throws IOException {
+            byte tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case INTEGER:
+                    return readInt();
+                case STRING:
+                    return readString();
+                case JOB:
+                    String toolName = readString();
+                    return new Job(toolName, readValue());
+                case SCHEDULED_JOB:
+                    long timeout = readLong();
+                    int priority = readByte();
+                    String scheduledToolName = readString();
+                    return new Job(scheduledToolName, readValue(), timeout, priority);
+                case LONG:
+                    return readLong();
+                case BYTES:
+                    return readBytes(readInt());
+                case DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                case BOOLEAN:
+                    return readByte() != 0;
+                case CONNECTIVITY_INFO:
+                    ConnectivityInfo info = new ConnectivityInfo();
+                    info.setName(readString());
+                    info.setHost(readString());
+                    info.setPort(readInt());
+                    info.setCores(readInt());
+                    info.setMaxConcurrentJobs(readInt());
+                    info.setWeight(Double.longBitsToDouble(readLong()));
+                    return info;
+                case LIST:
+                    int size = readInt();
+                    check(size);
+                    ArrayList<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                case FLOAT:
+                    return Float.intBitsToFloat(readInt());
+                case SHORT:
+                    return readShort();
+                case BYTE:
+                    return readByte();
+                case CHARACTER:
+                    return (char) readShort();
+                case SERIALIZED:
+                    int length = readInt();
+                    check(length);
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer, position, length))) {
+                        position += length;
+                        return in.readObject();
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException("[WireCodec.readValue] " + e);
+                    }
+                default:
+                    throw new IOException("[WireCodec.readValue] Unknown tag " + tag);
+            }
+        }
+
+        public String readString() throws IOException {
+            int length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            check(length);
+            String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return string;
+        }
+
+        public byte readByte() throws IOException {
+            check(1);
+            return buffer[position++];
+        }
+
+        public short readShort() throws IOException {
+            check(2);
+            return (short) (((buffer[position++] & 0xff) << 8) | (buffer[position++] & 0xff));
+        }
+
+        public int readInt() throws IOException {
+            check(4);
+            return ((buffer[position++] & 0xff) << 24) | ((buffer[position++] & 0xff) << 16)
+                    | ((buffer[position++] & 0xff) << 8) | (buffer[position++] & 0xff);
+        }
+
+        public long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+        }
+
+        public byte[] readBytes(int length) throws IOException {
+            check(length);
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        private void check(int length) throws IOException {
+            if (length < 0 || position + length > limit) {
+                throw new IOException("[WireCodec.Decoder] Truncated frame");
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package appserver.job;
+
+/**
+ * Interface [Deterministic] Marker for tools whose result depends on nothing but the job's parameters,
+ * i.e. pure functions without side effects. Satellites report such tools to the server, which may then
+ * answer repeated jobs out of its result cache instead of running them again. Such tools are idempotent, too.
+ */
+public interface Deterministic extends Idempotent {
+}
@@ -0,0 +1,9 @@
+package appserver.job;
+
+/**
+ * Interface [Idempotent] Marker for tools that may be run more than once for the same job without harm,
+ * e.g. tools without side effects. The server may send a job of such a tool to a second satellite when the
+ * first one is slow, and take whichever result comes first.
+ */
+public interface Idempotent {
+}
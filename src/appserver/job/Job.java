@@ -10,14 +10,33 @@ import java.io.Serializable;
  * @author Dr.-Ing. Wolf-Dieter Otte
  */
 public class Job implements Serializable{
+
+    // priority classes, the higher ones are scheduled first
+    public static final int HIGH = 0;
+    public static final int NORMAL = 1;
+    public static final int LOW = 2;
+    public static final int PRIORITIES = 3;
     
     String toolName;
     Object parameters;
+    // time the job may take, counted from its arrival at the server; 0 for no limit
+    long timeoutMillis;
+    int priority = NORMAL;
     
     public Job(String toolName, Object parameters) {
         this.toolName = toolName;
         this.parameters = parameters;
     }
+
+    public Job(String toolName, Object parameters, long timeoutMillis) {
+        this(toolName, parameters);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Job(String toolName, Object parameters, long timeoutMillis, int priority) {
+        this(toolName, parameters, timeoutMillis);
+        this.priority = priority;
+    }
     
     public String getToolName() {
         return toolName;
@@ -26,4 +45,26 @@ public class Job implements Serializable{
     public Object getParameters() {
         return parameters;
     }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Name of a priority class, as used in metrics
+     */
+    public static String priorityName(int priority) {
+        switch (priority) {
+            case HIGH:
+                return "high";
+            case LOW:
+                return "low";
+            default:
+                return "normal";
+        }
+    }
 }
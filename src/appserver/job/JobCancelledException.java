@@ -0,0 +1,14 @@
+package appserver.job;
+
+/**
+ * Class [JobCancelledException] Exception that is raised by a tool whose job has been cancelled,
+ * see <code>Tool.checkCancelled()</code>
+ */
+public class JobCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JobCancelledException() {
+        super("Job cancelled");
+    }
+}
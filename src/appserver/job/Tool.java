@@ -9,4 +9,15 @@ package appserver.job;
  */
 public interface Tool {
     public Object go(Object parameters);
+
+    /**
+     * Cooperative cancellation: long running tools call this now and then, it throws a JobCancelledException
+     * once their job has been cancelled or has run past its deadline. The satellite interrupts the thread
+     * running a cancelled job, so tools that wait or sleep get an InterruptedException as well.
+     */
+    public static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new JobCancelledException();
+        }
+    }
 }
@@ -4,13 +4,14 @@
  * and open the template in the editor.
  */
 package appserver.job.impl;
+import appserver.job.Deterministic;
 import appserver.job.Tool;
 
 /**
  *
  * @author aarongiroux
  */
-public class Fibonacci implements Tool{
+public class Fibonacci implements Tool, Deterministic{
     
     @Override
     public Object go(Object parameters) {
@@ -29,6 +30,11 @@ public class Fibonacci implements Tool{
         {
             return 1;
         }
+        if (number > 20)
+        {
+            // the larger calls take long enough to ask, the small ones would only pay for it
+            Tool.checkCancelled();
+        }
         return fibonacci(number-1) + fibonacci(number-2);
     }
 }
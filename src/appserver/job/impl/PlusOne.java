@@ -1,5 +1,6 @@
 package appserver.job.impl;
 
+import appserver.job.Deterministic;
 import appserver.job.Tool;
 
 /**
@@ -7,14 +8,13 @@ import appserver.job.Tool;
  * 
  * @author Dr.-Ing. Wolf-Dieter Otte
  */
-public class PlusOne implements Tool{
+public class PlusOne implements Tool, Deterministic{
 
-    PlusOneAux helper = null;
-    
     @Override
     public Object go(Object parameters) {
         
-        helper = new PlusOneAux((Integer) parameters);
+        // a local helper, the satellite runs the jobs of one tool instance concurrently
+        PlusOneAux helper = new PlusOneAux((Integer) parameters);
         return helper.getResult();
     }
 }
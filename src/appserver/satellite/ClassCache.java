@@ -0,0 +1,125 @@
+package appserver.satellite;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Class [ClassCache] A directory that keeps the class files and bundles loaded from the web server across restarts.
+ * <p>
+ * Files are stored content-addressed, under the SHA-256 hash of their bytes in <code>objects/</code>.
+ * For every file, by name, <code>index/</code> holds the hash along with the ETag and Last-Modified values
+ * the web server sent, to revalidate the class with a conditional request. Files are written to a
+ * temporary file first and renamed, so that a crash never leaves a partial file behind.
+ */
+public class ClassCache {
+
+    private final File objects;
+    private final File index;
+
+    public ClassCache(File directory) throws IOException {
+        objects = new File(directory, "objects");
+        index = new File(directory, "index");
+        if (!(objects.isDirectory() || objects.mkdirs()) || !(index.isDirectory() || index.mkdirs())) {
+            throw new IOException("Cannot create class cache in " + directory);
+        }
+    }
+
+    /**
+     * The cached version of a file, null if there is none or its bytes do not match their hash
+     */
+    public Entry get(String name) {
+        File indexFile = new File(index, name);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try {
+            Properties properties = new Properties();
+            try (FileInputStream in = new FileInputStream(indexFile)) {
+                properties.load(in);
+            }
+            String hash = properties.getProperty("hash");
+            byte[] classData = Files.readAllBytes(new File(objects, hash).toPath());
+            if (!hash.equals(sha256(classData))) {
+                return null;
+            }
+            return new Entry(classData, properties.getProperty("etag"), properties.getProperty("last-modified"));
+        } catch (IOException | RuntimeException e) {
+            // unreadable, the class is loaded from the web server again
+            return null;
+        }
+    }
+
+    /**
+     * Stores a file as it came from the web server; failures only cost a download next time
+     */
+    public void put(String name, byte[] classData, String eTag, String lastModified) {
+        try {
+            String hash = sha256(classData);
+            File object = new File(objects, hash);
+            if (!object.isFile()) {
+                writeAtomically(object, classData);
+            }
+
+            Properties properties = new Properties();
+            properties.setProperty("hash", hash);
+            if (eTag != null) {
+                properties.setProperty("etag", eTag);
+            }
+            if (lastModified != null) {
+                properties.setProperty("last-modified", lastModified);
+            }
+            File temporary = File.createTempFile(name, ".tmp", index);
+            try (FileOutputStream out = new FileOutputStream(temporary)) {
+                properties.store(out, name);
+            }
+            Files.move(temporary.toPath(), new File(index, name).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[ClassCache.put] Cannot cache " + name + ": " + e);
+        }
+    }
+
+    private void writeAtomically(File file, byte[] data) throws IOException {
+        File temporary = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            out.write(data);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Class [Entry] The bytes of a cached file and the validators to revalidate it
+     */
+    public static class Entry {
+
+        final byte[] classData;
+        final String eTag;
+        final String lastModified;
+
+        Entry(byte[] classData, String eTag, String lastModified) {
+            this.classData = classData;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package appserver.satellite;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class [ClassReferences] Finds the classes a class file refers to, by reading its constant pool.
+ * Used to request the helper classes of a tool before the JVM asks for them one by one.
+ */
+public class ClassReferences {
+
+    /**
+     * Names of the classes in the same package as the given class that its class file refers to
+     */
+    public static List<String> samePackage(String className, byte[] classData) {
+        List<String> references = new ArrayList<String>();
+        int lastDot = className.lastIndexOf('.');
+        String packagePrefix = lastDot == -1 ? "" : className.substring(0, lastDot + 1);
+
+        try {
+            for (String reference : referencedClasses(classData)) {
+                if (reference.startsWith(packagePrefix) && reference.indexOf('.', packagePrefix.length()) == -1
+                        && !reference.equals(className)) {
+                    references.add(reference);
+                }
+            }
+        } catch (IOException e) {
+            // not a readable class file, defineClass() will complain about it
+        }
+        return references;
+    }
+
+    /**
+     * Names of all classes in the constant pool, arrays excluded
+     */
+    static List<String> referencedClasses(byte[] classData) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classData));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNameIndex = new int[count];
+        int classes = 0;
+
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classNameIndex[classes++] = in.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.skipBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.skipBytes(4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.skipBytes(8);
+                    i++; // takes two entries
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < classes; i++) {
+            String name = utf8[classNameIndex[i]];
+            if (name != null && !name.startsWith("[")) {
+                names.add(name.replace('/', '.'));
+            }
+        }
+        return names;
+    }
+}
@@ -2,10 +2,22 @@ package appserver.satellite;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
 
 /**
  * Class [HTTPClassLoader] Instances of this class can load class files from web servers
+ * <p>
+ * All class files are requested over one persistent HTTP/1.1 connection. The first class of a package
+ * brings the bundle of the package along, a jar with all of its classes, so that the classes a tool depends on
+ * are defined from local bytes. Without a bundle on the web server, the classes a class file references
+ * from its own package are requested right away in one pipelined batch instead.
+ * <p>
+ * With a <code>ClassCache</code>, class files are kept on disk across restarts. A cached class is
+ * requested conditionally, and defined from the local bytes when the web server answers 304 Not Modified
+ * or cannot be reached.
  *
  * @author Dr.-Ing. Wolf-Dieter Otte
  */
@@ -14,6 +26,23 @@ public class HTTPClassLoader extends ClassLoader {
     String host;
     int port;
     String classRootDir;
+    // class files on disk, null if there is no cache
+    ClassCache classCache = null;
+
+    // the persistent connection to the web server, guarded by this class loader
+    Socket classDataSocket = null;
+    InputStream readFromNet = null;
+    OutputStream writeToNet = null;
+
+    // class files fetched ahead of time, by class name
+    Map<String, byte[]> prefetched = new HashMap<String, byte[]>();
+    // classes requested before, successfully or not
+    Set<String> requested = new HashSet<String>();
+    // packages whose bundle was requested
+    Set<String> bundledPackages = new HashSet<String>();
+
+    // name of the virtual jar with all classes of a package, on the web server
+    public static final String BUNDLE_NAME = "bundle.jar";
 
     /**
      * Common Constructor
@@ -24,6 +53,14 @@ public class HTTPClassLoader extends ClassLoader {
         this.port = port;
     }
 
+    /**
+     * Constructor with a class cache on disk
+     */
+    public HTTPClassLoader(String host, int port, ClassCache classCache) {
+        this(host, port);
+        this.classCache = classCache;
+    }
+
     /**
      * Constructor for test purposes on "well-known" port
      */
@@ -34,8 +71,18 @@ public class HTTPClassLoader extends ClassLoader {
     /**
      * Overrides corresponding method in superclass <code>ClassLoader</code>
      */
-    public Class findClass(String className) throws ClassNotFoundException {
-        byte[] classData = loadClassData(className);
+    public synchronized Class findClass(String className) throws ClassNotFoundException {
+        byte[] classData = prefetched.remove(className);
+        if (classData == null) {
+            loadBundle(className);
+            classData = prefetched.remove(className);
+        }
+        if (classData == null) {
+            classData = loadClassData(className);
+        }
+
+        // fetch the helper classes in the same package in one go, unless they came with the bundle
+        prefetch(ClassReferences.samePackage(className, classData));
 
         Class classObject = defineClass(className, classData, 0, classData.length);
         System.out.println("Class object \"" + className + "\" created");
@@ -47,112 +94,284 @@ public class HTTPClassLoader extends ClassLoader {
      * the bytes of a class file from a web server
      */
     private byte[] loadClassData(String className) throws ClassNotFoundException {
+        requested.add(className);
+        byte[][] classData = fetch(Collections.singletonList(classPath(className)));
 
-        DataInputStream readFromNet = null;
-        PrintStream writeToNet = null;
+        // class file data there?
+        if (classData[0] == null || classData[0].length == 0) {
+            throw new ClassNotFoundException("No class file present or class file empty");
+        }
 
-        // aux fields for processing HTTP-header
-        byte[] protocolHeaderLine = new byte[256];
-        String inputLine;
+        System.err.println("Bytes Class \"" + className + "\" loaded");
+        return classData[0];
+    }
 
-        // aux fields for reading bytes of class file
-        byte[] classData = null;
-        int bytesRead = 0;
-        int offset = 0;
-        int blockSize = 128;
+    /**
+     * Requests the bundle of the package of a class, once per package, and keeps its classes for
+     * <code>findClass()</code>. Without a bundle on the web server, classes are requested one by one.
+     */
+    private void loadBundle(String className) {
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot == -1 || !bundledPackages.add(className.substring(0, lastDot))) {
+            return;
+        }
+        String bundlePath = className.substring(0, lastDot).replace('.', '/') + "/" + BUNDLE_NAME;
 
         try {
-            Socket classDataSocket = new Socket(host, port);
-
-            readFromNet = new DataInputStream(classDataSocket.getInputStream());
-            writeToNet = new PrintStream(classDataSocket.getOutputStream());
-
-            // process resource string
-            String classPath = className.replace('.', '/') + ".class";
+            byte[] bundle = fetch(Collections.singletonList(bundlePath))[0];
+            if (bundle == null) {
+                return;
+            }
 
-            String stringToNet = "GET " + classPath + " HTTP/1.0 \r\n\r\n";
-            System.err.println("\nRequest to Server: \n\"GET " + classPath + " HTTP/1.0\"");
+            // index the bundle by class name
+            try (JarInputStream jar = new JarInputStream(new ByteArrayInputStream(bundle))) {
+                JarEntry entry;
+                while ((entry = jar.getNextJarEntry()) != null) {
+                    String name = entry.getName();
+                    if (!name.endsWith(".class")) {
+                        continue;
+                    }
+                    String bundledClass = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+                    if (findLoadedClass(bundledClass) == null && !prefetched.containsKey(bundledClass)) {
+                        prefetched.put(bundledClass, jar.readAllBytes());
+                        requested.add(bundledClass);
+                    }
+                }
+            }
+            System.err.println("Bundle \"" + bundlePath + "\" loaded");
+        } catch (ClassNotFoundException | IOException e) {
+            // classes are requested one by one then
+            System.err.println("Bundle \"" + bundlePath + "\" not usable: " + e);
+        }
+    }
 
-            //  ... requesting class file ...
-            writeToNet.print(stringToNet);
-            writeToNet.flush();
+    /**
+     * Requests the class files of the given classes that have not been requested yet; missing ones are ignored
+     */
+    private void prefetch(Collection<String> classNames) {
+        List<String> toFetch = new ArrayList<String>();
+        for (String className : classNames) {
+            if (!requested.contains(className) && findLoadedClass(className) == null) {
+                toFetch.add(className);
+                requested.add(className);
+            }
+        }
+        if (toFetch.isEmpty()) {
+            return;
+        }
 
-	    // **************************************************************************************************
-            // process header information ...
-            System.err.println("\nServer responds:");
-            int i = -1;
-            while ((protocolHeaderLine[++i] = readFromNet.readByte()) != (byte) '\n') {
-                ; // empty loop
+        List<String> paths = new ArrayList<String>();
+        for (String className : toFetch) {
+            paths.add(classPath(className));
+        }
+        try {
+            byte[][] classData = fetch(paths);
+            for (int i = 0; i < classData.length; i++) {
+                if (classData[i] != null && classData[i].length > 0) {
+                    prefetched.put(toFetch.get(i), classData[i]);
+                }
             }
-            i--;
-            inputLine = new String(protocolHeaderLine, 0, i);
-            System.err.println(inputLine);
+        } catch (ClassNotFoundException e) {
+            // prefetching is an optimization only, findClass() will ask again
+            requested.removeAll(toFetch);
+        }
+    }
 
-            StringTokenizer tokenizer = new StringTokenizer(inputLine);
-            tokenizer.nextToken();
-            String returnCode = tokenizer.nextToken();
+    private static String classPath(String className) {
+        return className.replace('.', '/') + ".class";
+    }
 
-            if (returnCode.equals("200")) {
-                // skip the rest
-                while (true) {
-                    i = -1;
-                    while ((protocolHeaderLine[++i] = readFromNet.readByte()) != (byte) '\n') {
-                        ; // empty loop
-                    }
-                    i--;
-                    inputLine = new String(protocolHeaderLine, 0, i);
-                    System.err.println(inputLine);
+    /**
+     * Sends one request per file in a single pipelined write, then reads the responses in order.
+     * A missing file yields null. If the connection turns out to be closed by the server,
+     * it is opened again and the whole batch is requested once more. If the web server cannot be
+     * reached at all, cached files are used as they are.
+     */
+    private byte[][] fetch(List<String> paths) throws ClassNotFoundException {
+        ClassCache.Entry[] cached = new ClassCache.Entry[paths.size()];
+        if (classCache != null) {
+            for (int i = 0; i < cached.length; i++) {
+                cached[i] = classCache.get(cacheName(paths.get(i)));
+            }
+        }
 
-                    // look for empty line, there is the beginning of the class file data
-                    if (inputLine.trim().equals("")) {
-                        break; // ... this is the beginning
+        try {
+            return fetchOnce(paths, cached);
+        } catch (IOException first) {
+            // the server may have closed the idle keep-alive connection
+            closeConnection();
+            try {
+                return fetchOnce(paths, cached);
+            } catch (IOException ioe) {
+                closeConnection();
+                byte[][] classData = new byte[cached.length][];
+                for (int i = 0; i < cached.length; i++) {
+                    if (cached[i] == null) {
+                        throw new ClassNotFoundException(ioe.toString());
                     }
+                    System.err.println("Web server not reachable, using cached \"" + paths.get(i) + "\"");
+                    classData[i] = cached[i].classData;
                 }
-            } else {
-                throw new ClassNotFoundException("Class file not found");
+                return classData;
             }
+        }
+    }
 
-	    // **************************************************************************************************
-            // read the bytes of the class file ...
-            classData = new byte[blockSize];
+    private byte[][] fetchOnce(List<String> paths, ClassCache.Entry[] cached) throws IOException {
+        if (classDataSocket == null) {
+            classDataSocket = new Socket(host, port);
+            classDataSocket.setTcpNoDelay(true);
+            readFromNet = new BufferedInputStream(classDataSocket.getInputStream());
+            writeToNet = new BufferedOutputStream(classDataSocket.getOutputStream());
+        }
 
-            while (true) {
-                bytesRead = readFromNet.read(classData, offset, blockSize);
+        //  ... requesting files, conditionally if they are cached ...
+        for (int i = 0; i < paths.size(); i++) {
+            System.err.println("\nRequest to Server: \n\"GET /" + paths.get(i) + " HTTP/1.1\"");
 
-				// End-of-Stream reached
-                // is EOS reached immediately, the file is empty or not there
-                if (bytesRead == -1) {
-                    // EOS or no data
-                    break;
+            StringBuilder request = new StringBuilder();
+            request.append("GET /").append(paths.get(i)).append(" HTTP/1.1\r\n");
+            request.append("Host: ").append(host).append(':').append(port).append("\r\n");
+            request.append("Connection: keep-alive\r\n");
+            if (cached[i] != null && cached[i].eTag != null) {
+                request.append("If-None-Match: ").append(cached[i].eTag).append("\r\n");
+            }
+            if (cached[i] != null && cached[i].lastModified != null) {
+                request.append("If-Modified-Since: ").append(cached[i].lastModified).append("\r\n");
+            }
+            request.append("\r\n");
+            writeToNet.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+        writeToNet.flush();
+
+        // ... and reading the responses in the same order
+        byte[][] data = new byte[paths.size()][];
+        for (int i = 0; i < data.length; i++) {
+            Response response = readResponse();
+            if (response.status == 304 && cached[i] != null) {
+                System.err.println("\"" + paths.get(i) + "\" not modified, using cached one");
+                data[i] = cached[i].classData;
+            } else if (response.status == 200) {
+                data[i] = response.body;
+                if (classCache != null) {
+                    classCache.put(cacheName(paths.get(i)), response.body, response.eTag, response.lastModified);
                 }
+            }
+        }
+        return data;
+    }
 
-                offset += bytesRead;
+    /**
+     * Name of a file in the class cache, e.g. appserver.job.impl.PlusOne.class
+     */
+    private static String cacheName(String path) {
+        return path.replace('/', '.');
+    }
+
+    /**
+     * Reads one response: status, validators and body
+     */
+    private Response readResponse() throws IOException {
+        Response response = new Response();
+
+        // process header information ...
+        System.err.println("\nServer responds:");
+        String inputLine = readLine();
+        System.err.println(inputLine);
+
+        StringTokenizer tokenizer = new StringTokenizer(inputLine);
+        tokenizer.nextToken();
+        response.status = Integer.parseInt(tokenizer.nextToken());
+
+        int contentLength = -1;
+        boolean closeAfterwards = false;
+        // header lines up to the empty line, there is the beginning of the class file data
+        while (!(inputLine = readLine()).isEmpty()) {
+            System.err.println(inputLine);
+            int colon = inputLine.indexOf(':');
+            if (colon == -1) {
+                continue;
+            }
+            String name = inputLine.substring(0, colon).trim();
+            String value = inputLine.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(value);
+            } else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) {
+                closeAfterwards = true;
+            } else if (name.equalsIgnoreCase("ETag")) {
+                response.eTag = value;
+            } else if (name.equalsIgnoreCase("Last-Modified")) {
+                response.lastModified = value;
+            }
+        }
 
-                // enlarge field, if necessary
-                if (offset + blockSize >= classData.length) {
-                    byte[] temp = new byte[classData.length * 2];
-                    System.arraycopy(classData, 0, temp, 0, offset);
-                    classData = temp;
+        // read the bytes of the body, framed by its length if the server sent one
+        if (response.status == 304) {
+            // never has a body
+            response.body = new byte[0];
+        } else if (contentLength >= 0) {
+            response.body = new byte[contentLength];
+            int offset = 0;
+            while (offset < contentLength) {
+                int bytesRead = readFromNet.read(response.body, offset, contentLength - offset);
+                if (bytesRead == -1) {
+                    throw new EOFException("Connection closed within class file");
                 }
+                offset += bytesRead;
             }
+        } else {
+            // no length, the body ends with the connection
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] block = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = readFromNet.read(block)) != -1) {
+                bytes.write(block, 0, bytesRead);
+            }
+            response.body = bytes.toByteArray();
+            closeAfterwards = true;
+        }
+
+        if (closeAfterwards) {
+            closeConnection();
+        }
+        return response;
+    }
 
-            // cut field to proper size
-            if (offset < classData.length) {
-                byte[] temp = new byte[offset];
-                System.arraycopy(classData, 0, temp, 0, offset);
-                classData = temp;
+    /**
+     * Reads a header line from the buffered stream, without the line end
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = readFromNet.read()) != '\n') {
+            if (c == -1) {
+                throw new EOFException("Connection closed within header");
+            }
+            if (c != '\r') {
+                line.append((char) c);
             }
-        } catch (IOException ioe) {
-            throw new ClassNotFoundException(ioe.toString());
         }
+        return line.toString();
+    }
 
-        // class file data there?
-        if (classData.length == 0) {
-            throw new ClassNotFoundException("No class file present or class file empty");
+    private void closeConnection() {
+        if (classDataSocket != null) {
+            try {
+                classDataSocket.close();
+            } catch (IOException e) {
+            }
         }
+        classDataSocket = null;
+    }
 
-        System.err.println("Bytes Class \"" + className + "\" loaded");
+    /**
+     * Class [Response] Status, validators and body of a response of the web server
+     */
+    static class Response {
 
-        return classData;
+        int status;
+        String eTag = null;
+        String lastModified = null;
+        byte[] body;
     }
 }
@@ -0,0 +1,247 @@
+package appserver.satellite;
+
+import appserver.job.Job;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import utils.AgingPriorityQueue;
+import utils.LatencyWindow;
+
+/**
+ * Class [JobScheduler] Decides which of the jobs that arrived at the satellite runs next. At most
+ * <code>workers</code> jobs run at a time on the job executor, the others wait by priority class with aging
+ * and, within a class, earliest deadline first (see <code>AgingPriorityQueue</code>). The last
+ * <code>reservedWorkers</code> workers only take high priority jobs, so that a latency sensitive job finds a
+ * free worker right away, however many batch jobs are queued up.
+ * <p>
+ * At most <code>maxQueued</code> jobs wait, further ones are rejected. A tool may be limited in the jobs that run
+ * at a time; a job whose tool is at its limit is put aside until one of the tool's jobs is done, then it goes
+ * back into the queue with the time it has been waiting. The time jobs wait for a worker is measured apart from the time they run: waits that grow while run
+ * times stay the same mean that the satellite is oversubscribed.
+ */
+public class JobScheduler {
+
+    private final Executor executor;
+    private final int reservedWorkers;
+    private final int maxQueued;
+    private final long agingMillis;
+    // jobs of a tool that run at a time, by tool name; tools not in here are not limited
+    private final Map<String, Integer> toolLimits;
+
+    // guarded by this
+    private final AgingPriorityQueue<Scheduled> queue;
+    // jobs whose tool was at its limit when it was their turn, by tool name
+    private final HashMap<String, AgingPriorityQueue<Scheduled>> parked = new HashMap<>();
+    private final HashMap<String, Integer> toolRunning = new HashMap<>();
+    private int workers;
+    private int running = 0;
+    private int queued = 0;
+    private long completed = 0;
+    private long rejected = 0;
+
+    private final LatencyWindow waitTimes = new LatencyWindow(1);
+    private final LatencyWindow runTimes = new LatencyWindow(1);
+
+    public JobScheduler(Executor executor, int workers, int reservedWorkers, long agingMillis, int maxQueued,
+            Map<String, Integer> toolLimits) {
+        this.executor = executor;
+        this.workers = Math.max(1, workers);
+        this.reservedWorkers = Math.max(0, reservedWorkers);
+        this.agingMillis = agingMillis;
+        this.maxQueued = maxQueued;
+        this.toolLimits = toolLimits;
+        queue = new AgingPriorityQueue<>(Job.PRIORITIES, agingMillis);
+    }
+
+    /**
+     * Queues a job of the given tool and class, the deadline in milliseconds since the epoch or 0 for none.
+     * If the queue is full or the executor refuses to run the job, <code>rejected</code> is run instead.
+     */
+    public void submit(Runnable job, Runnable rejected, String toolName, int priority, long deadline) {
+        boolean full;
+        synchronized (this) {
+            full = queued >= maxQueued;
+            if (full) {
+                this.rejected++;
+            } else {
+                Scheduled scheduled = new Scheduled(job, rejected, toolName, priority, deadline);
+                queue.add(scheduled, priority, deadline, scheduled.queuedAt);
+                queued++;
+            }
+        }
+        if (full) {
+            rejected.run();
+            return;
+        }
+        startWaiting();
+    }
+
+    /**
+     * Reads tool limits of the form <code>toolName:limit, ...</code>, as in TOOL_LIMITS
+     */
+    public static Map<String, Integer> parseToolLimits(String toolLimits) {
+        HashMap<String, Integer> limits = new HashMap<>();
+        if (toolLimits == null) {
+            return limits;
+        }
+        for (String toolLimit : toolLimits.split(",")) {
+            int colon = toolLimit.lastIndexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            try {
+                limits.put(toolLimit.substring(0, colon).trim(), Math.max(1, Integer.parseInt(toolLimit.substring(colon + 1).trim())));
+            } catch (NumberFormatException e) {
+                System.err.println("[JobScheduler] Bad tool limit: " + toolLimit.trim());
+            }
+        }
+        return limits;
+    }
+
+    /**
+     * The satellite's capacity changed, e.g. because its CPU quota did
+     */
+    public void setWorkers(int workers) {
+        synchronized (this) {
+            this.workers = Math.max(1, workers);
+        }
+        startWaiting();
+    }
+
+    /**
+     * Adds the figures of the scheduler to the given map, times in microseconds
+     */
+    public synchronized void addMetrics(Map<String, Object> metrics) {
+        metrics.put("workers", workers);
+        metrics.put("reservedWorkers", reserved());
+        metrics.put("running", running);
+        metrics.put("queued", queued);
+        metrics.put("completed", completed);
+        metrics.put("rejected", rejected);
+        metrics.put("p50QueueWait", waitTimes.percentile(50) / 1000);
+        metrics.put("p99QueueWait", waitTimes.percentile(99) / 1000);
+        metrics.put("p50RunTime", runTimes.percentile(50) / 1000);
+        metrics.put("p99RunTime", runTimes.percentile(99) / 1000);
+        for (String toolName : toolLimits.keySet()) {
+            metrics.put("tool." + toolName + ".running", toolRunning.getOrDefault(toolName, 0));
+        }
+    }
+
+    /**
+     * Reserved workers, one worker is always left for the other classes
+     */
+    private int reserved() {
+        return Math.min(reservedWorkers, workers - 1);
+    }
+
+    private void startWaiting() {
+        while (true) {
+            Scheduled next;
+            synchronized (this) {
+                if (running < workers - reserved()) {
+                    next = next(Job.LOW);
+                } else if (running < workers) {
+                    next = next(Job.HIGH);
+                } else {
+                    return;
+                }
+                if (next == null) {
+                    return;
+                }
+                running++;
+                queued--;
+                toolRunning.merge(next.toolName, 1, Integer::sum);
+            }
+
+            long started = System.nanoTime();
+            waitTimes.record(started - next.arrival);
+            try {
+                executor.execute(() -> {
+                    try {
+                        next.job.run();
+                    } finally {
+                        runTimes.record(System.nanoTime() - started);
+                        finished(next);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    running--;
+                    rejected++;
+                    toolFinished(next.toolName);
+                }
+                next.rejected.run();
+            }
+        }
+    }
+
+    /**
+     * The next job of the classes up to the given one whose tool is below its limit
+     */
+    private Scheduled next(int lowestPriority) {
+        Scheduled next;
+        while ((next = queue.poll(lowestPriority)) != null) {
+            if (hasRoom(next.toolName)) {
+                return next;
+            }
+            // the job keeps the time it has been waiting, and so the classes it gained
+            parked.computeIfAbsent(next.toolName, toolName -> new AgingPriorityQueue<>(Job.PRIORITIES, agingMillis))
+                    .add(next, next.priority, next.deadline, next.queuedAt);
+        }
+        return null;
+    }
+
+    private boolean hasRoom(String toolName) {
+        Integer limit = toolLimits.get(toolName);
+        return limit == null || toolRunning.getOrDefault(toolName, 0) < limit;
+    }
+
+    private void finished(Scheduled job) {
+        synchronized (this) {
+            running--;
+            completed++;
+            toolFinished(job.toolName);
+        }
+        startWaiting();
+    }
+
+    /**
+     * A job of the tool is no longer running, the tool's jobs put aside go back into the queue to take their
+     * turn by class and deadline
+     */
+    private void toolFinished(String toolName) {
+        toolRunning.merge(toolName, -1, Integer::sum);
+        AgingPriorityQueue<Scheduled> waiting = parked.remove(toolName);
+        if (waiting == null) {
+            return;
+        }
+        Scheduled job;
+        while ((job = waiting.poll()) != null) {
+            queue.add(job, job.priority, job.deadline, job.queuedAt);
+        }
+    }
+
+    /**
+     * Class [Scheduled] A queued job and what to do if it cannot be run
+     */
+    private static class Scheduled {
+
+        final Runnable job;
+        final Runnable rejected;
+        final String toolName;
+        final int priority;
+        final long deadline;
+        final long arrival = System.nanoTime();
+        // for aging, in milliseconds since the epoch like the deadline
+        final long queuedAt = System.currentTimeMillis();
+
+        Scheduled(Runnable job, Runnable rejected, String toolName, int priority, long deadline) {
+            this.job = job;
+            this.rejected = rejected;
+            this.toolName = toolName;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+    }
+}
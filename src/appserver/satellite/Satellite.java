@@ -1,23 +1,50 @@
 package appserver.satellite;
 
+import appserver.job.Deterministic;
+import appserver.job.Idempotent;
 import appserver.job.Job;
+import appserver.job.JobCancelledException;
 import appserver.comm.ConnectivityInfo;
 import appserver.job.UnknownToolException;
 import appserver.comm.Message;
+import appserver.comm.MessageChannel;
+import appserver.comm.MessageChannelFactory;
+import appserver.comm.WireCodec;
+import static appserver.comm.MessageTypes.CANCEL_JOB;
+import static appserver.comm.MessageTypes.DETERMINISTIC_TOOL;
+import static appserver.comm.MessageTypes.HEARTBEAT;
+import static appserver.comm.MessageTypes.IDEMPOTENT_TOOL;
+import static appserver.comm.MessageTypes.JOB_BATCH;
+import static appserver.comm.MessageTypes.JOB_ERROR;
 import static appserver.comm.MessageTypes.JOB_REQUEST;
+import static appserver.comm.MessageTypes.JOB_RESULT;
+import static appserver.comm.MessageTypes.LIST_TOOLS;
+import static appserver.comm.MessageTypes.PING;
 import static appserver.comm.MessageTypes.REGISTER_SATELLITE;
+import static appserver.comm.MessageTypes.SATELLITE_METRICS;
+import static appserver.comm.MessageTypes.UNREGISTER_SATELLITE;
+import static appserver.comm.MessageTypes.UPDATE_CAPACITY;
 import appserver.job.Tool;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import utils.ExecutorFactory;
 import utils.PropertyHandler;
 
 /**
@@ -32,7 +59,31 @@ public class Satellite extends Thread {
     private ConnectivityInfo satelliteInfo = new ConnectivityInfo();
     private ConnectivityInfo serverInfo = new ConnectivityInfo();
     private HTTPClassLoader classLoader = null;
+    // wire format used towards the server
+    private int codec = WireCodec.CODEC_BINARY;
     private Hashtable<String, Tool> toolsCache = null;
+    // run the SatelliteThreads and the jobs, configured by [JOB_]EXECUTOR, [JOB_]POOL_SIZE and [JOB_]QUEUE_SIZE
+    private Executor connectionExecutor = null;
+    private Executor jobExecutor = null;
+    // order of the jobs waiting for the job executor, see JobScheduler; RESERVED_WORKERS, PRIORITY_AGING,
+    // RUN_QUEUE_SIZE and TOOL_LIMITS
+    private JobScheduler jobScheduler = null;
+    // directory of the class cache on disk, CLASS_CACHE_DIR, none if not configured
+    private String classCacheDir = null;
+    // number of warm-up jobs per preloaded tool, WARMUP_ITERATIONS
+    private int warmUpIterations = 100;
+
+    // connection to the server for registration and heartbeats, guarded by this satellite
+    private Socket serverSocket = null;
+    private MessageChannel toServer = null;
+    // heartbeat interval (HEARTBEAT_INTERVAL) and time given to jobs in flight on shutdown (DRAIN_TIMEOUT)
+    private int heartbeatIntervalMillis = 2000;
+    private int drainTimeoutMillis = 30000;
+    private volatile boolean shuttingDown = false;
+    // connections from the server, the server closes them once a drained satellite's jobs are done
+    private final AtomicInteger openConnections = new AtomicInteger();
+    // true if the cores are taken from the JVM, which follows CPU quota changes of the container
+    private boolean detectCores = true;
 
     public Satellite(String satellitePropertiesFile, String classLoaderPropertiesFile, String serverPropertiesFile) {
         // read this satellite's properties and populate satelliteInfo object,
@@ -43,6 +94,29 @@ public class Satellite extends Thread {
             PropertyHandler satProps = new PropertyHandler(satellitePropertiesFile);
             satelliteInfo.setName(satProps.getProperty("NAME"));
             satelliteInfo.setPort(Integer.parseInt(satProps.getProperty("PORT")));
+            connectionExecutor = ExecutorFactory.create(satProps, "", "SatelliteThread");
+            jobExecutor = ExecutorFactory.create(satProps, "JOB_", "Job");
+            classCacheDir = satProps.getProperty("CLASS_CACHE_DIR");
+            warmUpIterations = satProps.getIntProperty("WARMUP_ITERATIONS", warmUpIterations);
+            heartbeatIntervalMillis = satProps.getIntProperty("HEARTBEAT_INTERVAL", heartbeatIntervalMillis);
+            drainTimeoutMillis = satProps.getIntProperty("DRAIN_TIMEOUT", drainTimeoutMillis);
+
+            // capacity advertised to the server: CORES, MAX_CONCURRENT_JOBS and WEIGHT
+            detectCores = satProps.getProperty("CORES") == null;
+            satelliteInfo.setCores(satProps.getIntProperty("CORES", Runtime.getRuntime().availableProcessors()));
+            int defaultConcurrentJobs = satelliteInfo.getCores();
+            if (ExecutorFactory.POOL.equalsIgnoreCase(satProps.getProperty("JOB_EXECUTOR", "").trim()))
+            {
+                defaultConcurrentJobs = satProps.getIntProperty("JOB_POOL_SIZE", defaultConcurrentJobs);
+            }
+            satelliteInfo.setMaxConcurrentJobs(satProps.getIntProperty("MAX_CONCURRENT_JOBS", defaultConcurrentJobs));
+            if (satProps.getProperty("WEIGHT") != null)
+            {
+                satelliteInfo.setWeight(Double.parseDouble(satProps.getProperty("WEIGHT").trim()));
+            }
+            jobScheduler = new JobScheduler(jobExecutor, satelliteInfo.getMaxConcurrentJobs(),
+                    satProps.getIntProperty("RESERVED_WORKERS", 1), satProps.getIntProperty("PRIORITY_AGING", 5000),
+                    satProps.getIntProperty("RUN_QUEUE_SIZE", 1000), JobScheduler.parseToolLimits(satProps.getProperty("TOOL_LIMITS")));
             System.out.println("[Satellite] successfully set up satellite properties.");
         }
         catch(IOException e)
@@ -60,6 +134,7 @@ public class Satellite extends Thread {
             PropertyHandler appServerProps = new PropertyHandler(serverPropertiesFile);
             serverInfo.setHost(appServerProps.getProperty("HOST"));
             serverInfo.setPort(Integer.parseInt(appServerProps.getProperty("PORT")));
+            codec = MessageChannelFactory.codecForName(appServerProps.getProperty("WIRE_CODEC"));
             System.out.println("[Satellite] successfully set up app server properties.");
         }
         catch(IOException e)
@@ -77,7 +152,11 @@ public class Satellite extends Thread {
             PropertyHandler classLoaderProps = new PropertyHandler(classLoaderPropertiesFile);
             String host = classLoaderProps.getProperty("HOST");
             int port = Integer.parseInt(classLoaderProps.getProperty("PORT"));
-            classLoader = new HTTPClassLoader(host, port);
+            if (classCacheDir != null) {
+                classLoader = new HTTPClassLoader(host, port, new ClassCache(new File(classCacheDir.trim())));
+            } else {
+                classLoader = new HTTPClassLoader(host, port);
+            }
             System.out.println("[Satellite] successfully set up class loader.");
 
         }
@@ -103,36 +182,57 @@ public class Satellite extends Thread {
     @Override
     public void run() {
 
-        // register this satellite with the SatelliteManager on the server
+        // create server socket with port in properties
+        // it has to be there before registering, the server pushes the tools to preload right away
         // ---------------------------------------------------------------
-
-        Message registerMessage = new Message(REGISTER_SATELLITE, satelliteInfo);
+        ServerSocket jobSocket;
         try
         {
+            jobSocket = new ServerSocket(satelliteInfo.getPort());
+            System.out.println("[Satellite] successfully set up ServerSocket.");
+        }
+        catch(IOException e)
+        {
+            System.err.println(e);
+            return;
+        }
 
-            Socket server = new Socket(serverInfo.getHost(), serverInfo.getPort());
-            ObjectOutputStream toServer = new ObjectOutputStream(server.getOutputStream());
-            System.out.println("[Satellite.run] registering satellite with server");
-            toServer.writeObject(registerMessage);
+        // register this satellite with the SatelliteManager on the server
+        // ---------------------------------------------------------------
+        try
+        {
+            sendToServer(new Message(REGISTER_SATELLITE, satelliteInfo));
+            System.out.println("[Satellite.run] registered satellite with server");
         }
         catch(IOException e)
         {
             System.err.println(e);
         }
 
+        // keep telling the server that this satellite is alive, leave gracefully on shutdown
+        Thread heartbeats = new Thread(this::sendHeartbeats, "Heartbeat");
+        heartbeats.setDaemon(true);
+        heartbeats.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "Drain"));
 
-        // create server socket with port in properties
+
+        // start taking job requests in a server loop
         // ---------------------------------------------------------------
         try
         {
-            ServerSocket serverSocket = new ServerSocket(satelliteInfo.getPort());
-            System.out.println("[Satellite] successfully set up ServerSocket.");
-            // start taking job requests in a server loop
-            // ---------------------------------------------------------------
             while (true)
             {
-                Socket socket = serverSocket.accept();
-                (new SatelliteThread(socket, this)).start();
+                Socket socket = jobSocket.accept();
+                try
+                {
+                    connectionExecutor.execute(new SatelliteThread(socket, this));
+                }
+                catch(RejectedExecutionException e)
+                {
+                    // all pool threads busy and the queue is full
+                    System.err.println("[Satellite.run] Too many connections, closing " + socket.getRemoteSocketAddress());
+                    socket.close();
+                }
             }
         }
         catch(IOException e)
@@ -141,14 +241,139 @@ public class Satellite extends Thread {
         }
     }
 
-    // inner helper class that is instanciated in above server loop and processes single job requests
-    private class SatelliteThread extends Thread {
+    /**
+     * Writes a message to the server on the registration connection, opening it if needed
+     */
+    private synchronized void sendToServer(Message message) throws IOException {
+        try
+        {
+            if (toServer == null)
+            {
+                serverSocket = new Socket(serverInfo.getHost(), serverInfo.getPort());
+                toServer = MessageChannelFactory.connect(serverSocket, codec);
+            }
+            toServer.write(message);
+        }
+        catch(IOException e)
+        {
+            // try with a new connection next time
+            closeServerConnection();
+            throw e;
+        }
+    }
+
+    private synchronized void closeServerConnection() {
+        if (serverSocket != null)
+        {
+            try
+            {
+                serverSocket.close();
+            }
+            catch(IOException e)
+            {
+            }
+        }
+        serverSocket = null;
+        toServer = null;
+    }
+
+    /**
+     * Advertises a new capacity to the server, e.g. when the satellite is throttled; a weight of 0
+     * lets the server derive the weight from the other figures
+     */
+    public synchronized void updateCapacity(int cores, int maxConcurrentJobs, double weight) throws IOException {
+        ConnectivityInfo capacity = new ConnectivityInfo();
+        capacity.setName(satelliteInfo.getName());
+        capacity.setPort(satelliteInfo.getPort());
+        capacity.setCores(cores);
+        capacity.setMaxConcurrentJobs(Math.max(1, maxConcurrentJobs));
+        capacity.setWeight(weight);
+        satelliteInfo = capacity;
+        jobScheduler.setWorkers(capacity.getMaxConcurrentJobs());
+        sendToServer(new Message(UPDATE_CAPACITY, capacity));
+    }
+
+    /**
+     * Heartbeat loop; the heartbeat carries the satellite's connectivity information, so that a server
+     * that has lost this satellite, or has been restarted, takes it in again
+     */
+    private void sendHeartbeats() {
+        while (!shuttingDown)
+        {
+            try
+            {
+                Thread.sleep(heartbeatIntervalMillis);
+                if (!shuttingDown)
+                {
+                    sendToServer(new Message(HEARTBEAT, satelliteInfo));
+                    // queue wait and run times of the jobs, for the server's metrics
+                    LinkedHashMap<String, Object> metrics = new LinkedHashMap<String, Object>();
+                    metrics.put("name", satelliteInfo.getName());
+                    jobScheduler.addMetrics(metrics);
+                    sendToServer(new Message(SATELLITE_METRICS, metrics));
+                }
+
+                // CPU quota of the container changed
+                int cores = Runtime.getRuntime().availableProcessors();
+                if (detectCores && cores != satelliteInfo.getCores())
+                {
+                    System.out.println("[Satellite.sendHeartbeats] " + cores + " cores available now");
+                    updateCapacity(cores, satelliteInfo.getMaxConcurrentJobs() * cores / satelliteInfo.getCores(), satelliteInfo.getWeight());
+                }
+            }
+            catch(InterruptedException e)
+            {
+                return;
+            }
+            catch(IOException e)
+            {
+                System.err.println("[Satellite.sendHeartbeats] " + e);
+            }
+        }
+    }
+
+    /**
+     * Graceful shutdown: unregisters from the server, which then sends no more jobs and closes its
+     * connections as soon as the jobs in flight are done. Waits for that, at most DRAIN_TIMEOUT.
+     */
+    private void drain() {
+        shuttingDown = true;
+        try
+        {
+            sendToServer(new Message(UNREGISTER_SATELLITE, satelliteInfo.getName()));
+            System.out.println("[Satellite.drain] unregistered, waiting for jobs in flight");
+        }
+        catch(IOException e)
+        {
+            System.err.println(e);
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        while (openConnections.get() > 0 && System.currentTimeMillis() < deadline)
+        {
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch(InterruptedException e)
+            {
+                break;
+            }
+        }
+        closeServerConnection();
+        System.out.println("[Satellite.drain] done, " + openConnections.get() + " connections left");
+    }
+
+    // inner helper class that is instanciated in above server loop and processes the job requests of one connection
+    private class SatelliteThread implements Runnable {
 
         Satellite satellite = null;
         Socket jobRequest = null;
-        ObjectInputStream readFromNet = null;
-        ObjectOutputStream writeToNet = null;
+        MessageChannel channel = null;
         Message message = null;
+        // jobs of this connection that have not been answered yet, by correlation id
+        ConcurrentHashMap<Long, RunningJob> runningJobs = new ConcurrentHashMap<>();
 
         SatelliteThread(Socket jobRequest, Satellite satellite) {
             this.jobRequest = jobRequest;
@@ -157,56 +382,325 @@ public class Satellite extends Thread {
 
         @Override
         public void run() {
+            openConnections.incrementAndGet();
+            try
+            {
+                serve();
+            }
+            finally
+            {
+                openConnections.decrementAndGet();
+            }
+        }
+
+        private void serve() {
             System.out.println("[SatelliteThread] starting new thread...");
-            // setting up object streams
+            // negotiating the wire format with the server
             try
             {
-                writeToNet = new ObjectOutputStream(jobRequest.getOutputStream());
-                readFromNet = new ObjectInputStream(jobRequest.getInputStream());
+                channel = MessageChannelFactory.accept(jobRequest);
             }
             catch(IOException e)
             {
                 System.err.println(e);
+                closeConnection();
+                return;
             }
 
-
-            // reading message from the socket to do a job
-            try
+            // the server keeps its connections open, serve messages until it closes this one
+            while (true)
             {
-                message = (Message) readFromNet.readObject();
+                // reading message from the socket to do a job
+                try
+                {
+                    message = channel.read();
+                }
+                catch(EOFException e)
+                {
+                    // connection closed by the server
+                    break;
+                }
+                catch(IOException e)
+                {
+                    System.err.println(e);
+                    break;
+                }
+
+                if (!processMessage(message))
+                {
+                    break;
+                }
             }
-            catch(ClassNotFoundException | IOException e)
+
+            // nobody is going to read the results
+            for (RunningJob running : runningJobs.values())
             {
-                System.err.println(e);
+                running.cancel();
             }
+            closeConnection();
+        }
 
+        /**
+         * Processes one message, returns false if the connection cannot be used any longer
+         */
+        private boolean processMessage(Message message) {
             // switches to correspond to the job
             switch (message.getType()) {
               // corresponds to the job request
                 case JOB_REQUEST:
-                    // processing job request
+                case JOB_BATCH:
+                    // queue the job by priority and deadline, keep reading meanwhile
                     Job job = (Job) message.getContent();
-                    try
-                    {
-                        // lookup the tool name corresponding to the job
-                        Tool tool = getToolObject(job.getToolName());
-                      // run the tool and process the job
-                        Object result = tool.go(job.getParameters());
+                    RunningJob running = new RunningJob();
+                    runningJobs.put(message.getCorrelationId(), running);
+                    long deadline = job.getTimeoutMillis() > 0 ? System.currentTimeMillis() + job.getTimeoutMillis() : 0;
+                    jobScheduler.submit(() -> processJob(message, running), () -> rejectJob(message), job.getToolName(), job.getPriority(), deadline);
+                    break;
 
-                        // send the result back
-                        writeToNet.writeObject(result);
+                case LIST_TOOLS:
+                    // tools pushed by the server: load and warm them up, then tell the server
+                    preloadTools(message);
+                    break;
 
-                    }
-                    catch (Exception e)
+                case CANCEL_JOB:
+                    // the server gave up on a job: interrupt its tool, or do not start it at all
+                    RunningJob cancelled = runningJobs.get((Long) message.getContent());
+                    if (cancelled != null)
                     {
-                        System.err.println(e);
+                        cancelled.cancel();
                     }
+                    break;
 
+                case PING:
+                    // health check of the server's connection pool
+                    try
+                    {
+                        send(message);
+                    }
+                    catch (IOException e)
+                    {
+                        return false;
+                    }
                     break;
 
                 default:
                     System.err.println("[SatelliteThread.run] Warning: Message type not implemented");
             }
+            return true;
+        }
+
+        /**
+         * Runs a multiplexed job request and sends back JOB_RESULT or JOB_ERROR with the request's correlation id.
+         * A batch runs the tool once per parameter, its result is the list of the results.
+         */
+        private void processJob(Message message, RunningJob running) {
+            Job job = (Job) message.getContent();
+            Message response;
+            try
+            {
+                if (!running.start())
+                {
+                    throw new JobCancelledException();
+                }
+                // lookup the tool name corresponding to the job and run it
+                Tool tool = getToolObject(job.getToolName());
+                Object result;
+                if (message.getType() == JOB_BATCH)
+                {
+                    ArrayList<Object> results = new ArrayList<Object>();
+                    for (Object parameters : (List<?>) job.getParameters())
+                    {
+                        results.add(tool.go(parameters));
+                    }
+                    result = results;
+                }
+                else
+                {
+                    result = tool.go(job.getParameters());
+                }
+                response = new Message(JOB_RESULT, result, message.getCorrelationId());
+            }
+            catch (Exception e)
+            {
+                System.err.println(e);
+                response = new Message(JOB_ERROR, e.toString(), message.getCorrelationId());
+            }
+            finally
+            {
+                running.finish();
+                runningJobs.remove(message.getCorrelationId());
+            }
+
+            try
+            {
+                send(response);
+            }
+            catch (IOException e)
+            {
+                System.err.println(e);
+                closeConnection();
+            }
+        }
+
+        /**
+         * Answers a job that did not fit into the run queue, or that the job executor refused to run
+         */
+        private void rejectJob(Message message) {
+            runningJobs.remove(message.getCorrelationId());
+            try
+            {
+                send(new Message(JOB_ERROR, "[Satellite] Too many jobs, rejected", message.getCorrelationId()));
+            }
+            catch (IOException e)
+            {
+                System.err.println(e);
+                closeConnection();
+            }
+        }
+
+        /**
+         * Loads the tools of a LIST_TOOLS message and runs their warm-up jobs, so that the first real
+         * jobs neither wait for the class download nor run in the interpreter only. The warm-up of a tool
+         * is a low priority job of that tool for the job scheduler, it counts towards the workers and the
+         * tool's limit like any other. Answers with the names of the tools that are ready.
+         */
+        private void preloadTools(Message message) {
+            ArrayList<CompletableFuture<String>> preloading = new ArrayList<>();
+            for (Object entry : (ArrayList<?>) message.getContent())
+            {
+                Job tool = (Job) entry;
+                // completes with the tool's name once it is ready, with null if it is not
+                CompletableFuture<String> ready = new CompletableFuture<>();
+                preloading.add(ready);
+                jobScheduler.submit(() -> ready.complete(preloadTool(tool)), () -> {
+                    System.err.println("[SatelliteThread.preloadTools] Too busy to preload " + tool.getToolName());
+                    ready.complete(null);
+                }, tool.getToolName(), Job.LOW, 0);
+            }
+
+            CompletableFuture.allOf(preloading.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+                ArrayList<String> preloaded = new ArrayList<String>();
+                for (CompletableFuture<String> ready : preloading)
+                {
+                    if (ready.join() != null)
+                    {
+                        preloaded.add(ready.join());
+                    }
+                }
+                try
+                {
+                    send(new Message(LIST_TOOLS, preloaded, message.getCorrelationId()));
+                }
+                catch (IOException e)
+                {
+                    System.err.println(e);
+                    closeConnection();
+                }
+            });
+        }
+
+        /**
+         * Loads and warms up one tool, returns its name or null if it cannot be loaded
+         */
+        private String preloadTool(Job tool) {
+            try
+            {
+                Tool toolObject = getToolObject(tool.getToolName());
+                if (tool.getParameters() != null)
+                {
+                    for (int i = 0; i < warmUpIterations; i++)
+                    {
+                        toolObject.go(tool.getParameters());
+                    }
+                }
+                // again, the server may have been restarted since the tool was loaded
+                reportTraits(tool.getToolName(), toolObject);
+                System.out.println("[SatelliteThread.preloadTools] Preloaded " + tool.getToolName());
+                return tool.getToolName();
+            }
+            catch (Exception e)
+            {
+                System.err.println("[SatelliteThread.preloadTools] Cannot preload " + tool.getToolName() + ": " + e);
+                return null;
+            }
+        }
+
+        private void send(Message message) throws IOException {
+            // the channel serializes responses of concurrent jobs
+            channel.write(message);
+        }
+
+        private void closeConnection() {
+            try
+            {
+                jobRequest.close();
+            }
+            catch(IOException e)
+            {
+            }
+        }
+    }
+
+    /**
+     * Class [RunningJob] A job of a connection, from its arrival until it is answered. Cancelling it interrupts
+     * the thread running its tool, see <code>Tool.checkCancelled()</code>, or keeps it from being started.
+     */
+    private static class RunningJob {
+
+        // guarded by this
+        private Thread thread = null;
+        private boolean cancelled = false;
+
+        /**
+         * Called by the thread about to run the job, false if the job has been cancelled in the meantime
+         */
+        synchronized boolean start() {
+            if (cancelled)
+            {
+                return false;
+            }
+            thread = Thread.currentThread();
+            return true;
+        }
+
+        /**
+         * Called by the thread that ran the job; an interrupt that came too late must not hit the next job
+         */
+        void finish() {
+            synchronized (this)
+            {
+                thread = null;
+            }
+            Thread.interrupted();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (thread != null)
+            {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Tells the server that the results of a tool may be cached, or that its jobs may be run twice
+     */
+    private void reportTraits(String toolClassString, Tool toolObject) {
+        try
+        {
+            if (toolObject instanceof Deterministic)
+            {
+                sendToServer(new Message(DETERMINISTIC_TOOL, toolClassString));
+            }
+            if (toolObject instanceof Idempotent)
+            {
+                sendToServer(new Message(IDEMPOTENT_TOOL, toolClassString));
+            }
+        }
+        catch(IOException e)
+        {
+            System.err.println(e);
         }
     }
 
@@ -227,6 +721,7 @@ public class Satellite extends Thread {
             toolObject = (Tool) toolClass.newInstance();
             // put the tool into the toolsCache for future re-use
             toolsCache.put(toolClassString, toolObject);
+            reportTraits(toolClassString, toolObject);
         }
 
         // return the Tool object
@@ -0,0 +1,258 @@
+package appserver.server;
+
+import appserver.comm.Message;
+import appserver.comm.WireCodec;
+import static appserver.comm.MessageTypes.OVERLOADED;
+import appserver.job.Job;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class [DispatchQueue] Admission control between the clients and the satellites. At most
+ * <code>maxInFlight</code> jobs are at the satellites at a time, and a satellite only gets jobs while it is
+ * below its own limit (see <code>LoadManager.hasCapacity()</code>). Jobs beyond that wait in a bounded queue,
+ * shared among the tenants by weighted fair queueing and, within a tenant, by priority class with aging and
+ * earliest deadline first (see <code>FairQueue</code>). Tenants may be limited in the jobs they have in flight and
+ * in their rate. High priority jobs only wait for the global limit, the satellites keep workers free for them.
+ * When the queue
+ * is full, a job is answered right away with an OVERLOADED message carrying the time after which the client may
+ * try again, instead of piling up latency for everybody. Jobs that are cancelled or run past their deadline
+ * while waiting are dropped from the queue.
+ */
+public class DispatchQueue {
+
+    final int maxInFlight;
+    final int maxQueued;
+    final int retryAfterMillis;
+
+    // guarded by this
+    private final FairQueue<Queued> queue;
+    private int inFlight = 0;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong queuedTotal = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+
+    /**
+     * The tenants' quotas are read from the given properties, see <code>FairQueue</code>
+     */
+    public DispatchQueue(int maxInFlight, int maxQueued, int retryAfterMillis, long agingMillis, Properties tenantProperties) {
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.retryAfterMillis = retryAfterMillis;
+        queue = new FairQueue<>(tenantProperties, Job.PRIORITIES, agingMillis);
+    }
+
+    /**
+     * Dispatches an encoded job request of the control's tenant now, later or not at all; the returned future
+     * completes with the encoded response, which is OVERLOADED if the job was rejected. It never completes
+     * exceptionally.
+     */
+    public CompletableFuture<byte[]> submit(byte[] request, JobControl control) {
+        if (control.isCancelled()) {
+            return CompletableFuture.completedFuture(control.cancelledFrame());
+        }
+        int priority = WireCodec.getPriority(request);
+        long arrival = System.nanoTime();
+        FairQueue.Tenant<Queued> tenant;
+        Queued waiting;
+        synchronized (this) {
+            tenant = queue.tenant(control.getTenant());
+            tenant.submitted++;
+            long retryAfter = tenant.admit();
+            if (retryAfter > 0) {
+                // beyond the tenant's rate
+                tenant.rejected++;
+                rejected.incrementAndGet();
+                return CompletableFuture.completedFuture(overloadedFrame((int) retryAfter));
+            }
+            if (queue.size() == 0 && canStart(priority) && tenant.canStart()) {
+                inFlight++;
+                queue.started(tenant);
+                waiting = null;
+            } else if (queue.size() < maxQueued) {
+                waiting = new Queued(request, control, tenant);
+                queue.add(tenant, waiting, priority, control.getDeadline());
+                accepted.incrementAndGet();
+                queuedTotal.incrementAndGet();
+            } else {
+                tenant.rejected++;
+                rejected.incrementAndGet();
+                return CompletableFuture.completedFuture(overloadedFrame());
+            }
+        }
+
+        CompletableFuture<byte[]> response;
+        if (waiting != null) {
+            // outside the lock, the job may be cancelled already
+            control.whenCancelled(() -> drop(waiting));
+            // the job may go ahead of the others, e.g. if they wait for their tenant's limit
+            startWaiting();
+            response = waiting.response;
+        } else {
+            accepted.incrementAndGet();
+            response = start(request, control, tenant);
+        }
+        return response.whenComplete((result, e) -> {
+            synchronized (this) {
+                tenant.completed(System.nanoTime() - arrival);
+            }
+        });
+    }
+
+    /**
+     * Sends a copy of a slow job to a satellite that is not in the given set, see <code>Hedging</code>. The copy
+     * counts towards the global limit and its tenant's like any job, but it does not wait: if a job is queued or
+     * there is no room for it right now, it is not sent and null is returned.
+     */
+    public CompletableFuture<byte[]> submitHedge(byte[] request, Set<String> excluded, JobControl control) {
+        int priority = WireCodec.getPriority(request);
+        FairQueue.Tenant<Queued> tenant;
+        synchronized (this) {
+            tenant = queue.tenant(control.getTenant());
+            // the waiting jobs have not had a first attempt yet
+            if (queue.size() > 0 || !canStart(priority) || !tenant.canStart()) {
+                return null;
+            }
+            inFlight++;
+            queue.started(tenant);
+        }
+        // counted like the jobs that started right away, so that accepted jobs are completed ones or in flight
+        accepted.incrementAndGet();
+        hedged.incrementAndGet();
+        return started(Server.dispatch(request, excluded, control), tenant);
+    }
+
+    /**
+     * To be called when satellites got added or got more capacity, so that waiting jobs are started
+     */
+    public void capacityChanged() {
+        startWaiting();
+    }
+
+    /**
+     * Forgets the tenants that have had no jobs for a while
+     */
+    public synchronized void evictIdleTenants() {
+        queue.evictIdle();
+    }
+
+    /**
+     * Adds the figures of the queue and of the tenants to the server's metrics
+     */
+    public void addMetrics(Map<String, Object> metrics) {
+        synchronized (this) {
+            metrics.put("dispatch.queueDepth", queue.size());
+            for (int priority = 0; priority < Job.PRIORITIES; priority++) {
+                metrics.put("dispatch.queueDepth." + Job.priorityName(priority), queue.size(priority));
+            }
+            metrics.put("dispatch.inFlight", inFlight);
+            queue.addMetrics(metrics);
+        }
+        metrics.put("dispatch.maxInFlight", maxInFlight);
+        metrics.put("dispatch.maxQueued", maxQueued);
+        metrics.put("dispatch.accepted", accepted.get());
+        metrics.put("dispatch.queued", queuedTotal.get());
+        metrics.put("dispatch.rejected", rejected.get());
+        metrics.put("dispatch.completed", completed.get());
+        metrics.put("dispatch.dropped", dropped.get());
+        metrics.put("dispatch.hedged", hedged.get());
+    }
+
+    /**
+     * Room for another job of the given class: below the global limit and, unless the job is of high priority,
+     * a satellite below its limit or no satellite at all, in which case the job fails right away rather than
+     * waiting for one
+     */
+    private boolean canStart(int priority) {
+        return inFlight < maxInFlight
+                && (priority == Job.HIGH || Server.loadManager.hasCapacity() || !Server.loadManager.hasSatellites());
+    }
+
+    private CompletableFuture<byte[]> start(byte[] request, JobControl control, FairQueue.Tenant<Queued> tenant) {
+        return started(Server.dispatch(request, control), tenant);
+    }
+
+    /**
+     * Gives the room of a job that has been sent back once it is done
+     */
+    private CompletableFuture<byte[]> started(CompletableFuture<byte[]> response, FairQueue.Tenant<Queued> tenant) {
+        return response.whenComplete((result, e) -> {
+            completed.incrementAndGet();
+            synchronized (this) {
+                inFlight--;
+                queue.finished(tenant);
+            }
+            startWaiting();
+        });
+    }
+
+    private void startWaiting() {
+        while (true) {
+            Queued next;
+            synchronized (this) {
+                // with the satellites at their limits only high priority jobs go on
+                next = canStart(Job.LOW) ? queue.poll(Job.LOW) : canStart(Job.HIGH) ? queue.poll(Job.HIGH) : null;
+                if (next == null) {
+                    return;
+                }
+                inFlight++;
+            }
+            // outside the lock, sending the job may block on the connection
+            start(next.request, next.control, next.tenant).thenAccept(next.response::complete);
+        }
+    }
+
+    /**
+     * Takes a cancelled job out of the queue, unless it has been started already
+     */
+    private void drop(Queued waiting) {
+        synchronized (this) {
+            if (!queue.remove(waiting.tenant, waiting)) {
+                return;
+            }
+        }
+        dropped.incrementAndGet();
+        waiting.response.complete(waiting.control.cancelledFrame());
+    }
+
+    /**
+     * Encoded OVERLOADED message with the time after which the client may try again
+     */
+    byte[] overloadedFrame() {
+        return overloadedFrame(retryAfterMillis);
+    }
+
+    private static byte[] overloadedFrame(int retryAfterMillis) {
+        try {
+            return WireCodec.encodeMessage(new Message(OVERLOADED, retryAfterMillis));
+        } catch (IOException e) {
+            // integers can always be encoded
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Class [Queued] A job waiting for room at the satellites
+     */
+    private static class Queued {
+
+        final byte[] request;
+        final JobControl control;
+        final FairQueue.Tenant<Queued> tenant;
+        final CompletableFuture<byte[]> response = new CompletableFuture<>();
+
+        Queued(byte[] request, JobControl control, FairQueue.Tenant<Queued> tenant) {
+            this.request = request;
+            this.control = control;
+            this.tenant = tenant;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package appserver.server;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import utils.AgingPriorityQueue;
+import utils.LatencyWindow;
+
+/**
+ * Class [FairQueue] Weighted fair queueing of the waiting jobs by tenant, so that one client with many long jobs
+ * cannot keep everybody else away from the satellites. A tenant is whatever a client names with a TENANT message,
+ * or else its connection. Each tenant has its own queue, by priority class with aging, see
+ * <code>AgingPriorityQueue</code>; the next job comes from the tenant with the smallest virtual start time
+ * (start-time fair queueing), each job advancing its tenant's time by <code>1 / weight</code>. A tenant that has
+ * been idle starts at the current virtual time, it cannot save up a share it did not use.
+ * <p>
+ * Quotas are configured for all tenants with <code>TENANT_WEIGHT</code>, <code>TENANT_MAX_JOBS_IN_FLIGHT</code> and
+ * <code>TENANT_RATE</code> (jobs per second), and per tenant with <code>TENANT.&lt;name&gt;.WEIGHT</code> and so on.
+ * A tenant at its concurrency limit is skipped until one of its jobs is done; jobs beyond its rate are rejected.
+ * <p>
+ * Not thread-safe, the dispatch queue holds its lock.
+ */
+public class FairQueue<T> {
+
+    // tenant of the requests that do not name one
+    static final String DEFAULT_TENANT = "default";
+    // tenants without jobs for this long are forgotten, the configured ones start over with a full rate bucket
+    static final long IDLE_MILLIS = 600000;
+
+    private final Properties properties;
+    private final int priorities;
+    private final long agingMillis;
+
+    private final LinkedHashMap<String, Tenant<T>> tenants = new LinkedHashMap<>();
+    private double virtualTime = 0;
+    private int size = 0;
+
+    public FairQueue(Properties properties, int priorities, long agingMillis) {
+        this.properties = properties;
+        this.priorities = priorities;
+        this.agingMillis = agingMillis;
+    }
+
+    /**
+     * The tenant of the given name, created with its configured quotas if it is new
+     */
+    public Tenant<T> tenant(String name) {
+        String tenantName = name == null ? DEFAULT_TENANT : name;
+        Tenant<T> tenant = tenants.get(tenantName);
+        if (tenant == null) {
+            tenant = new Tenant<>(tenantName, new AgingPriorityQueue<>(priorities, agingMillis),
+                    Math.max(0.01, doubleProperty(tenantName, "WEIGHT", 1)),
+                    (int) doubleProperty(tenantName, "MAX_JOBS_IN_FLIGHT", 0),
+                    doubleProperty(tenantName, "RATE", 0));
+            tenants.put(tenantName, tenant);
+        }
+        tenant.lastActive = System.currentTimeMillis();
+        return tenant;
+    }
+
+    public void add(Tenant<T> tenant, T item, int priority, long deadline) {
+        tenant.queue.add(item, priority, deadline);
+        size++;
+    }
+
+    /**
+     * Takes the next job of the classes up to the given one from the tenant whose turn it is, among the tenants
+     * below their concurrency limit; null if there is none. The tenant counts the job as in flight.
+     */
+    public T poll(int lowestPriority) {
+        Tenant<T> next = null;
+        double nextStart = 0;
+        for (Tenant<T> tenant : tenants.values()) {
+            if (tenant.queue.isEmpty(lowestPriority) || !tenant.canStart()) {
+                continue;
+            }
+            double start = Math.max(tenant.finish, virtualTime);
+            if (next == null || start < nextStart) {
+                next = tenant;
+                nextStart = start;
+            }
+        }
+        if (next == null) {
+            return null;
+        }
+        virtualTime = nextStart;
+        next.finish = nextStart + 1 / next.weight;
+        next.inFlight++;
+        size--;
+        return next.queue.poll(lowestPriority);
+    }
+
+    /**
+     * A job that did not wait starts right away; it takes its tenant's turn all the same
+     */
+    public void started(Tenant<T> tenant) {
+        double start = Math.max(tenant.finish, virtualTime);
+        tenant.finish = start + 1 / tenant.weight;
+        tenant.inFlight++;
+    }
+
+    public void finished(Tenant<T> tenant) {
+        tenant.inFlight--;
+    }
+
+    public boolean remove(Tenant<T> tenant, T item) {
+        if (!tenant.queue.remove(item)) {
+            return false;
+        }
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int size(int priority) {
+        int queued = 0;
+        for (Tenant<T> tenant : tenants.values()) {
+            queued += tenant.queue.size(priority);
+        }
+        return queued;
+    }
+
+    /**
+     * Forgets the tenants that have had no jobs for a while, e.g. those of closed connections
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        tenants.values().removeIf(tenant -> tenant.isIdle() && now - tenant.lastActive > IDLE_MILLIS);
+    }
+
+    /**
+     * Adds the figures of the tenants to the server's metrics, latencies in microseconds
+     */
+    public void addMetrics(Map<String, Object> metrics) {
+        for (Tenant<T> tenant : tenants.values()) {
+            String prefix = "tenant." + tenant.name + ".";
+            metrics.put(prefix + "weight", tenant.weight);
+            metrics.put(prefix + "inFlight", tenant.inFlight);
+            metrics.put(prefix + "queued", tenant.queue.size());
+            metrics.put(prefix + "submitted", tenant.submitted);
+            metrics.put(prefix + "rejected", tenant.rejected);
+            metrics.put(prefix + "completed", tenant.completed);
+            metrics.put(prefix + "throughput", tenant.throughput.perSecond());
+            metrics.put(prefix + "p50Latency", tenant.latencies.percentile(50) / 1000);
+            metrics.put(prefix + "p99Latency", tenant.latencies.percentile(99) / 1000);
+        }
+    }
+
+    private double doubleProperty(String tenantName, String key, double defaultValue) {
+        String value = properties.getProperty("TENANT." + tenantName + "." + key, properties.getProperty("TENANT_" + key));
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("[FairQueue] Bad value for " + key + " of tenant " + tenantName + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Class [Tenant] The queue, quotas and figures of one tenant
+     */
+    public static class Tenant<T> {
+
+        final String name;
+        final AgingPriorityQueue<T> queue;
+        final double weight;
+        // 0 for no limit
+        final int maxInFlight;
+        final double rate;
+
+        // guarded by the dispatch queue
+        int inFlight = 0;
+        double finish = 0;
+        long lastActive;
+        private double tokens;
+        private long tokensUpdated = System.nanoTime();
+        long submitted = 0;
+        long rejected = 0;
+        long completed = 0;
+
+        final LatencyWindow latencies = new LatencyWindow(1);
+        final Throughput throughput = new Throughput();
+
+        Tenant(String name, AgingPriorityQueue<T> queue, double weight, int maxInFlight, double rate) {
+            this.name = name;
+            this.queue = queue;
+            this.weight = weight;
+            this.maxInFlight = maxInFlight;
+            this.rate = rate;
+            // a burst of one second's worth of jobs
+            tokens = Math.max(1, rate);
+        }
+
+        boolean canStart() {
+            return maxInFlight <= 0 || inFlight < maxInFlight;
+        }
+
+        boolean isIdle() {
+            return inFlight == 0 && queue.isEmpty();
+        }
+
+        /**
+         * Takes a job within the tenant's rate: 0 if it may go on, else the milliseconds until it may try again
+         */
+        long admit() {
+            if (rate <= 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(Math.max(1, rate), tokens + (now - tokensUpdated) / 1e9 * rate);
+            tokensUpdated = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / rate * 1000);
+        }
+
+        void completed(long latencyNanos) {
+            completed++;
+            latencies.record(latencyNanos);
+            throughput.record();
+        }
+    }
+
+    /**
+     * Class [Throughput] Jobs completed per second, over the last ten seconds
+     */
+    static class Throughput {
+
+        static final int SECONDS = 10;
+
+        private final long[] counts = new long[SECONDS];
+        private long second = 0;
+
+        void record() {
+            advance();
+            counts[(int) (second % SECONDS)]++;
+        }
+
+        double perSecond() {
+            advance();
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return (double) total / SECONDS;
+        }
+
+        private void advance() {
+            long now = System.currentTimeMillis() / 1000;
+            if (now - second >= SECONDS) {
+                Arrays.fill(counts, 0);
+            } else {
+                for (long s = second + 1; s <= now; s++) {
+                    counts[(int) (s % SECONDS)] = 0;
+                }
+            }
+            second = Math.max(second, now);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package appserver.server;
+
+import appserver.comm.WireCodec;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import utils.LatencyWindow;
+
+/**
+ * Class [Hedging] Cuts the tail latency that a slow satellite (GC pause, swapping, a heavy job ahead in its queue)
+ * causes. A job of an idempotent tool that has not come back after the tool's <code>percentile</code> latency,
+ * learned from its recent jobs, is sent to a second satellite as well; whichever result arrives first is taken,
+ * the other satellite is sent CANCEL_JOB. Hedges are limited to <code>budgetPercent</code> of the jobs, so that a
+ * cluster that is slow as a whole does not get twice the load, and they go through the dispatch queue: a hedge
+ * counts towards the global and the tenant's limits, and none is sent while jobs are waiting for room.
+ */
+public class Hedging {
+
+    // jobs of a tool observed before it is hedged
+    static final int MIN_SAMPLES = 20;
+
+    final double percentile;
+    final int budgetPercent;
+
+    // tools whose jobs may be run twice
+    private final Set<String> tools = ConcurrentHashMap.newKeySet();
+    // latencies of single attempts, i.e. without hedging, and of the responses, i.e. with hedging
+    private final ConcurrentHashMap<String, LatencyWindow> attempts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyWindow> responses = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Hedging");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // sends the hedges, the timer thread must not wait for a satellite connection
+    private final Executor executor;
+
+    private final AtomicLong jobs = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    public Hedging(double percentile, int budgetPercent, Executor executor) {
+        this.percentile = percentile;
+        this.budgetPercent = budgetPercent;
+        this.executor = executor;
+    }
+
+    /**
+     * Allows the jobs of a tool to be hedged
+     */
+    public void enable(String toolName) {
+        if (tools.add(toolName)) {
+            System.out.println("[Hedging] Hedging jobs of " + toolName);
+        }
+    }
+
+    /**
+     * Sends an encoded job request to a satellite, and to a second one if the first is slow and the tool is
+     * idempotent; the returned future never completes exceptionally, like <code>Server.dispatch()</code>
+     */
+    public CompletableFuture<byte[]> dispatch(byte[] request, JobControl control) {
+        String toolName = toolNameOf(request);
+        if (percentile <= 0 || toolName == null || !tools.contains(toolName)) {
+            return Server.dispatch(request, null, control);
+        }
+        jobs.incrementAndGet();
+        LatencyWindow attemptLatencies = attempts.computeIfAbsent(toolName, name -> new LatencyWindow(MIN_SAMPLES));
+        LatencyWindow responseLatencies = responses.computeIfAbsent(toolName, name -> new LatencyWindow(MIN_SAMPLES));
+
+        // satellites that got this job, the hedge goes to another one
+        Set<String> satellites = ConcurrentHashMap.newKeySet();
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        long start = System.nanoTime();
+
+        // each attempt can be cancelled on its own, the one that loses is
+        JobControl first = JobControl.sharing(control);
+        JobControl second = JobControl.sharing(control);
+        control.whenCancelled(() -> {
+            first.cancel(control.getCancelReason());
+            second.cancel(control.getCancelReason());
+        });
+
+        // the copy is taken now, the first attempt puts its correlation id into the request
+        byte[] copy = request.clone();
+        attempt(request, satellites, first, attemptLatencies).thenAccept(result -> {
+            if (response.complete(result)) {
+                second.cancel("Answered by another satellite");
+            }
+        });
+
+        long delayNanos = attemptLatencies.percentile(percentile);
+        if (delayNanos > 0) {
+            timer.schedule(() -> {
+                try {
+                    executor.execute(() -> hedge(toolName, delayNanos, copy, satellites, response, second, first, attemptLatencies));
+                } catch (RejectedExecutionException e) {
+                    // the executor is busy, the job goes without its hedge
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        return response.whenComplete((result, e) -> responseLatencies.record(System.nanoTime() - start));
+    }
+
+    /**
+     * Adds the hedging figures to the server's metrics, latencies in microseconds
+     */
+    public void addMetrics(Map<String, Object> metrics) {
+        metrics.put("hedging.jobs", jobs.get());
+        metrics.put("hedging.hedged", hedged.get());
+        metrics.put("hedging.hedgeWins", hedgeWins.get());
+        metrics.put("hedging.hedgeRate", jobs.get() == 0 ? 0.0 : (double) hedged.get() / jobs.get());
+        for (Map.Entry<String, LatencyWindow> entry : attempts.entrySet()) {
+            LatencyWindow responseLatencies = responses.get(entry.getKey());
+            metrics.put("hedging." + entry.getKey() + ".p99Attempt", entry.getValue().percentile(99) / 1000);
+            metrics.put("hedging." + entry.getKey() + ".p99Response", responseLatencies == null ? 0 : responseLatencies.percentile(99) / 1000);
+        }
+    }
+
+    /**
+     * Sends the copy of a slow job, unless it is done by now, the budget is used up or there is no room for it
+     */
+    private void hedge(String toolName, long delayNanos, byte[] request, Set<String> satellites, CompletableFuture<byte[]> response,
+            JobControl control, JobControl other, LatencyWindow latencies) {
+        if (response.isDone() || control.isCancelled() || hedged.get() * 100 >= budgetPercent * jobs.get()
+                || Server.loadManager.getSatelliteCount() < 2) {
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<byte[]> hedge = Server.dispatchQueue.submitHedge(request, satellites, control);
+        if (hedge == null) {
+            return;
+        }
+        hedged.incrementAndGet();
+        System.out.println("[Hedging] " + toolName + " slower than " + delayNanos / 1000 + " us, hedging");
+        hedge.whenComplete((result, e) -> latencies.record(System.nanoTime() - start)).thenAccept(result -> {
+            if (response.complete(result)) {
+                hedgeWins.incrementAndGet();
+                other.cancel("Answered by another satellite");
+            }
+        });
+    }
+
+    private CompletableFuture<byte[]> attempt(byte[] request, Set<String> satellites, JobControl control, LatencyWindow latencies) {
+        long start = System.nanoTime();
+        return Server.dispatch(request, satellites, control).whenComplete((result, e) -> latencies.record(System.nanoTime() - start));
+    }
+
+    private static String toolNameOf(byte[] request) {
+        try {
+            return WireCodec.getToolName(request);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
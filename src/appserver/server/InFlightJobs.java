@@ -0,0 +1,97 @@
+package appserver.server;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Class [InFlightJobs] Single flight for identical jobs: while a job is running, the same job, i.e. the same
+ * tool with equal encoded parameters, is not run again but waits for the first one's result. Jobs are keyed
+ * like in the result cache, so only jobs of deterministic tools are coalesced. The shared job is only
+ * cancelled once every request waiting for it has been cancelled.
+ */
+public class InFlightJobs {
+
+    private final ConcurrentHashMap<ResultCache.Key, Flight> jobs = new ConcurrentHashMap<>();
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Runs the job with a control of its own, unless the same job is running already; the returned future
+     * completes with the encoded response. Every caller gets its own copy of the response, to put its
+     * correlation id in.
+     */
+    public CompletableFuture<byte[]> run(ResultCache.Key key, JobControl control, Function<JobControl, CompletableFuture<byte[]>> job) {
+        while (true) {
+            Flight flight = new Flight(control);
+            Flight running = jobs.putIfAbsent(key, flight);
+            if (running == null) {
+                started.incrementAndGet();
+                control.whenCancelled(() -> leave(key, flight, control));
+                job.apply(flight.control).whenComplete((response, e) -> {
+                    // from now on the same job runs again, or comes out of the result cache
+                    jobs.remove(key, flight);
+                    if (e != null) {
+                        flight.response.completeExceptionally(e);
+                    } else {
+                        flight.response.complete(response);
+                    }
+                });
+                return flight.response.thenApply(byte[]::clone);
+            }
+
+            synchronized (running) {
+                if (running.waiting == 0) {
+                    // everybody left, the job is being cancelled
+                    jobs.remove(key, running);
+                    continue;
+                }
+                running.waiting++;
+            }
+            coalesced.incrementAndGet();
+            control.whenCancelled(() -> leave(key, running, control));
+            return running.response.thenApply(byte[]::clone);
+        }
+    }
+
+    /**
+     * Adds the figures of the coalesced jobs to the server's metrics
+     */
+    public void addMetrics(Map<String, Object> metrics) {
+        metrics.put("singleFlight.inFlight", jobs.size());
+        metrics.put("singleFlight.started", started.get());
+        metrics.put("singleFlight.coalesced", coalesced.get());
+    }
+
+    /**
+     * A request waiting for the job has been cancelled, the last one cancels the job
+     */
+    private void leave(ResultCache.Key key, Flight flight, JobControl control) {
+        synchronized (flight) {
+            if (--flight.waiting > 0) {
+                return;
+            }
+        }
+        jobs.remove(key, flight);
+        flight.control.cancel(control.getCancelReason());
+    }
+
+    /**
+     * Class [Flight] A running job and the number of requests waiting for it; the job counts towards the
+     * tenant of the request that started it and is queued by its deadline
+     */
+    private static class Flight {
+
+        final CompletableFuture<byte[]> response = new CompletableFuture<>();
+        final JobControl control;
+        // guarded by this
+        int waiting = 1;
+
+        Flight(JobControl initiator) {
+            control = JobControl.sharing(initiator);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package appserver.server;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class [JobControl] Deadline and cancellation of one client request on its way through the server. The request
+ * is cancelled when the client sends CANCEL_JOB, when the client's connection closes, or when its deadline
+ * passes. Whoever holds the job at that moment has registered what to do: the dispatch queue drops it, a
+ * satellite is sent CANCEL_JOB, and the client is answered with a JOB_ERROR right away.
+ */
+public class JobControl {
+
+    // for requests that can neither be cancelled nor time out
+    public static final JobControl NONE = new JobControl(0, null) {
+
+        @Override
+        public void cancel(String reason) {
+        }
+
+        @Override
+        public void whenCancelled(Runnable action) {
+        }
+    };
+
+    private static final ScheduledExecutorService timer = createTimer();
+
+    private final long deadline;
+    // whose quota the request counts towards, null for the default tenant
+    private final String tenant;
+
+    // guarded by this
+    private String cancelReason = null;
+    private ArrayList<Runnable> actions = new ArrayList<>();
+    private ScheduledFuture<?> expiry = null;
+
+    private JobControl(long deadline, String tenant) {
+        this.deadline = deadline;
+        this.tenant = tenant;
+    }
+
+    /**
+     * Control of a request of the given tenant that times out after the given time, 0 for no limit
+     */
+    public static JobControl create(long timeoutMillis, String tenant) {
+        if (timeoutMillis <= 0) {
+            return new JobControl(0, tenant);
+        }
+        JobControl control = new JobControl(System.currentTimeMillis() + timeoutMillis, tenant);
+        ScheduledFuture<?> expiry = timer.schedule(() -> control.cancel("Deadline exceeded"), timeoutMillis, TimeUnit.MILLISECONDS);
+        synchronized (control) {
+            control.expiry = expiry;
+        }
+        return control;
+    }
+
+    /**
+     * Control of a job run on behalf of the given request that is scheduled by the request's deadline but does not
+     * expire by itself: the requests waiting for the job time out on their own
+     */
+    public static JobControl sharing(JobControl control) {
+        return new JobControl(control.deadline, control.tenant);
+    }
+
+    /**
+     * Deadline in milliseconds since the epoch, 0 for none
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    /**
+     * Why the request has been cancelled, null while it is not
+     */
+    public synchronized String getCancelReason() {
+        return cancelReason;
+    }
+
+    /**
+     * Cancels the request and runs the registered actions; only the first call counts
+     */
+    public void cancel(String reason) {
+        ArrayList<Runnable> cancelled;
+        synchronized (this) {
+            if (cancelReason != null) {
+                return;
+            }
+            cancelReason = reason;
+            cancelled = actions;
+            actions = null;
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+        }
+        for (Runnable action : cancelled) {
+            action.run();
+        }
+    }
+
+    /**
+     * Registers what to do when the request is cancelled; runs the action right away if it is already
+     */
+    public void whenCancelled(Runnable action) {
+        synchronized (this) {
+            if (cancelReason == null) {
+                actions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Encoded JOB_ERROR message to answer a cancelled request with
+     */
+    public synchronized byte[] cancelledFrame() {
+        return Server.errorFrame("[Server] " + cancelReason);
+    }
+
+    /**
+     * The given response or, if the request is cancelled before, the JOB_ERROR for the cancellation.
+     * Once there is a response the deadline timer is stopped.
+     */
+    public CompletableFuture<byte[]> bound(CompletableFuture<byte[]> response) {
+        if (this == NONE) {
+            return response;
+        }
+        CompletableFuture<byte[]> bounded = new CompletableFuture<>();
+        response.thenAccept(bounded::complete);
+        whenCancelled(() -> bounded.complete(cancelledFrame()));
+        bounded.thenRun(() -> {
+            synchronized (this) {
+                if (expiry != null) {
+                    expiry.cancel(false);
+                }
+                // nothing left to cancel, the actions registered so far are not needed any longer
+                if (cancelReason == null) {
+                    actions.clear();
+                }
+            }
+        });
+        return bounded;
+    }
+
+    private static ScheduledExecutorService createTimer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "JobDeadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // most jobs finish before their deadline, their timers must not pile up
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
@@ -0,0 +1,132 @@
+package appserver.server;
+
+import static appserver.comm.MessageTypes.JOB_RESULT;
+import appserver.comm.WireCodec;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class [JobStore] Jobs submitted with JOB_SUBMIT, by job id. The client gets the id right away and asks for
+ * the job's status or result later, possibly on another connection. Results are kept for <code>ttlMillis</code>
+ * after the job completed; at most <code>maxJobs</code> jobs are kept, when the store is full the oldest
+ * completed ones make room. Jobs still running are never dropped.
+ */
+public class JobStore {
+
+    public static final String PENDING = "PENDING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+    public static final String UNKNOWN = "UNKNOWN";
+
+    final int maxJobs;
+    final long ttlMillis;
+
+    // guarded by this, in submission order
+    private final LinkedHashMap<Long, StoredJob> jobs = new LinkedHashMap<>();
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong evicted = new AtomicLong();
+
+    public JobStore(int maxJobs, long ttlMillis) {
+        this.maxJobs = maxJobs;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Keeps track of a submitted job, returns its id or 0 if the store is full of running jobs
+     */
+    public long add(CompletableFuture<byte[]> response) {
+        StoredJob job = new StoredJob(response);
+        long id;
+        synchronized (this) {
+            if (jobs.size() >= maxJobs) {
+                evictExpired();
+                evictCompleted(jobs.size() - maxJobs + 1);
+                if (jobs.size() >= maxJobs) {
+                    return 0;
+                }
+            }
+            id = nextId.getAndIncrement();
+            jobs.put(id, job);
+        }
+        // failed jobs too, else they would never expire and the store could fill up with them
+        response.whenComplete((result, e) -> job.completedAt = System.currentTimeMillis());
+        return id;
+    }
+
+    /**
+     * The encoded response of a job, completes when the job is done; null if the id is unknown or the
+     * result got evicted
+     */
+    public synchronized CompletableFuture<byte[]> get(long id) {
+        StoredJob job = jobs.get(id);
+        return job == null ? null : job.response;
+    }
+
+    /**
+     * One of PENDING, DONE, FAILED and UNKNOWN
+     */
+    public String getStatus(long id) {
+        CompletableFuture<byte[]> response = get(id);
+        if (response == null) {
+            return UNKNOWN;
+        }
+        if (!response.isDone()) {
+            return PENDING;
+        }
+        return WireCodec.getType(response.join()) == JOB_RESULT ? DONE : FAILED;
+    }
+
+    /**
+     * Drops the results that are older than the time to live
+     */
+    public synchronized void evictExpired() {
+        long expiry = System.currentTimeMillis() - ttlMillis;
+        for (Iterator<StoredJob> iterator = jobs.values().iterator(); iterator.hasNext();) {
+            long completedAt = iterator.next().completedAt;
+            if (completedAt != 0 && completedAt < expiry) {
+                iterator.remove();
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Adds the figures of the store to the server's metrics
+     */
+    public void addMetrics(Map<String, Object> metrics) {
+        synchronized (this) {
+            metrics.put("jobStore.size", jobs.size());
+        }
+        metrics.put("jobStore.maxSize", maxJobs);
+        metrics.put("jobStore.submitted", nextId.get() - 1);
+        metrics.put("jobStore.evicted", evicted.get());
+    }
+
+    // guarded by this
+    private void evictCompleted(int count) {
+        for (Iterator<StoredJob> iterator = jobs.values().iterator(); iterator.hasNext() && count > 0;) {
+            if (iterator.next().completedAt != 0) {
+                iterator.remove();
+                evicted.incrementAndGet();
+                count--;
+            }
+        }
+    }
+
+    /**
+     * Class [StoredJob] A submitted job and, once it is done, the time it completed
+     */
+    private static class StoredJob {
+
+        final CompletableFuture<byte[]> response;
+        volatile long completedAt = 0;
+
+        StoredJob(CompletableFuture<byte[]> response) {
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package appserver.server;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class [LeastOutstandingPolicy] Picks the satellite with the fewest jobs outstanding, relative to its weight.
+ * The scan starts at a random position, so that ties are not always broken in favor of the first satellite.
+ */
+public class LeastOutstandingPolicy implements RoutingPolicy {
+
+    @Override
+    public SatelliteLoad select(List<SatelliteLoad> satellites) {
+        int size = satellites.size();
+        int start = ThreadLocalRandom.current().nextInt(size);
+
+        SatelliteLoad best = null;
+        for (int i = 0; i < size; i++) {
+            SatelliteLoad candidate = satellites.get((start + i) % size);
+            if (best == null || candidate.getRelativeLoad() < best.getRelativeLoad()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+}
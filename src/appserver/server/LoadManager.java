@@ -1,41 +1,217 @@
 package appserver.server;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Class [LoadManager] Decides which satellite a job is sent to. The decision is delegated to a
+ * pluggable RoutingPolicy, which works on per-satellite in-flight counters and latency figures.
+ * Selection does not need any lock: satellites are kept in an immutable list that is replaced when a
+ * satellite is added or removed, so a policy always works on a consistent snapshot.
  *
  * @author Dr.-Ing. Wolf-Dieter Otte
  */
 public class LoadManager {
 
-    static ArrayList<String> satellites = null;
-    static int lastSatelliteIndex = -1;
+    // names of the routing policies, as used in the server properties (ROUTING_POLICY)
+    public static final String ROUND_ROBIN = "round-robin";
+    public static final String LEAST_OUTSTANDING = "least-outstanding";
+    public static final String POWER_OF_TWO = "power-of-two";
+    public static final String PEAK_EWMA = "peak-ewma";
+    public static final String TOOL_AFFINITY = "tool-affinity";
+
+    private volatile List<SatelliteLoad> satellites = Collections.emptyList();
+    private final ConcurrentHashMap<String, SatelliteLoad> loads = new ConcurrentHashMap<>();
+    private final RoutingPolicy policy;
 
     public LoadManager() {
-        satellites = new ArrayList<String>();
+        this(ROUND_ROBIN);
+    }
+
+    public LoadManager(String policyName) {
+        policy = createPolicy(policyName);
+    }
+
+    /**
+     * Maps a policy name to its implementation, unknown names fall back to round robin
+     */
+    static RoutingPolicy createPolicy(String policyName) {
+        if (policyName == null) {
+            return new RoundRobinPolicy();
+        }
+        switch (policyName.trim().toLowerCase()) {
+            case LEAST_OUTSTANDING:
+                return new LeastOutstandingPolicy();
+            case POWER_OF_TWO:
+                return new PowerOfTwoChoicesPolicy();
+            case PEAK_EWMA:
+                return new PeakEwmaPolicy();
+            case TOOL_AFFINITY:
+                return new ToolAffinityPolicy();
+            case ROUND_ROBIN:
+                return new RoundRobinPolicy();
+            default:
+                System.err.println("[LoadManager] Unknown routing policy \"" + policyName + "\", using " + ROUND_ROBIN);
+                return new RoundRobinPolicy();
+        }
     }
 
     public void satelliteAdded(String satelliteName) {
-        // add satellite
-        satellites.add(satelliteName);
+        satelliteAdded(satelliteName, 1, 0);
+    }
+
+    /**
+     * Adds a satellite with the weight it advertised, see <code>ConnectivityInfo.getEffectiveWeight()</code>,
+     * and the number of jobs it gets at a time, 0 for no limit
+     */
+    public synchronized void satelliteAdded(String satelliteName, double weight, int limit) {
+        // add satellite, a re-registering satellite keeps its counters
+        SatelliteLoad load = new SatelliteLoad(satelliteName);
+        load.setWeight(weight);
+        load.setLimit(limit);
+        SatelliteLoad known = loads.putIfAbsent(satelliteName, load);
+        if (known != null) {
+            known.setWeight(weight);
+            known.setLimit(limit);
+        } else {
+            List<SatelliteLoad> added = new ArrayList<>(satellites);
+            added.add(load);
+            satellites = Collections.unmodifiableList(added);
+        }
+    }
+
+    /**
+     * Takes a satellite out of the rotation, jobs in flight on it are not affected
+     */
+    public synchronized void satelliteRemoved(String satelliteName) {
+        SatelliteLoad load = loads.remove(satelliteName);
+        if (load != null) {
+            List<SatelliteLoad> remaining = new ArrayList<>(satellites);
+            remaining.remove(load);
+            satellites = Collections.unmodifiableList(remaining);
+        }
+    }
+
+    /**
+     * A satellite advertised a new capacity, e.g. because it is throttled
+     */
+    public void capacityChanged(String satelliteName, double weight, int limit) {
+        SatelliteLoad load = loads.get(satelliteName);
+        if (load != null) {
+            load.setWeight(weight);
+            load.setLimit(limit);
+        }
+    }
+
+    /**
+     * A satellite reported its own figures, see <code>JobScheduler.addMetrics()</code>
+     */
+    public void metricsReported(String satelliteName, Map<String, Object> metrics) {
+        SatelliteLoad load = loads.get(satelliteName);
+        if (load != null) {
+            load.setReported(metrics);
+        }
+    }
+
+    public boolean hasSatellite(String satelliteName) {
+        return loads.containsKey(satelliteName);
+    }
+
+    public boolean hasSatellites() {
+        return !satellites.isEmpty();
+    }
+
+    public int getSatelliteCount() {
+        return satellites.size();
     }
 
+    /**
+     * Is there a satellite below its limit
+     */
+    public boolean hasCapacity() {
+        for (SatelliteLoad load : satellites) {
+            if (load.hasCapacity()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     public String nextSatellite() throws Exception {
-        
-        int numberSatellites = satellites.size();
-        
-        synchronized (satellites) {
-            // increment last Satellite Index to get the next satellite.
-            lastSatelliteIndex ++;
-            // if lastSatelliteIndex is over the arrayList size, reset to zero.
-            if (lastSatelliteIndex >= numberSatellites)
-            {
-                lastSatelliteIndex = 0;
+        return nextSatellite(null, null);
+    }
+
+    /**
+     * Picks the satellite for a job of the given tool, null if the job does not name one. Satellites in the
+     * excluded set, e.g. the one a hedged job went to first, are only picked if there is no other one.
+     */
+    public String nextSatellite(String toolName, Set<String> excluded) throws Exception {
+        // one snapshot for the whole decision
+        List<SatelliteLoad> candidates = satellites;
+
+        if (candidates.isEmpty()) {
+            throw new Exception("[LoadManager.nextSatellite] No satellites registered");
+        }
+
+        if (excluded != null && !excluded.isEmpty()) {
+            List<SatelliteLoad> others = new ArrayList<>(candidates.size());
+            for (SatelliteLoad load : candidates) {
+                if (!excluded.contains(load.getName())) {
+                    others.add(load);
+                }
+            }
+            if (!others.isEmpty()) {
+                candidates = others;
+            }
+        }
+
+        // satellites at their limit only get jobs if all of them are
+        List<SatelliteLoad> available = new ArrayList<>(candidates.size());
+        for (SatelliteLoad load : candidates) {
+            if (load.hasCapacity()) {
+                available.add(load);
+            }
+        }
+
+        // let the policy choose
+        return policy.select(available.isEmpty() ? candidates : available, toolName).getName();
+    }
+
+    /**
+     * Adds the load figures of the satellites to the server's metrics
+     */
+    public void addMetrics(Map<String, Object> metrics) {
+        for (SatelliteLoad load : satellites) {
+            metrics.put("satellite." + load.getName() + ".outstanding", load.getOutstanding());
+            metrics.put("satellite." + load.getName() + ".limit", load.getLimit() == Integer.MAX_VALUE ? 0 : load.getLimit());
+            metrics.put("satellite." + load.getName() + ".weight", load.getWeight());
+            for (Map.Entry<String, Object> reported : load.getReported().entrySet()) {
+                metrics.put("satellite." + load.getName() + "." + reported.getKey(), reported.getValue());
             }
         }
-        
-        // return string at the current index.
-        return satellites.get(lastSatelliteIndex);
+    }
+
+    /**
+     * Called by the server thread right before a job is sent to a satellite
+     */
+    public void jobStarted(String satelliteName) {
+        SatelliteLoad load = loads.get(satelliteName);
+        if (load != null) {
+            load.jobStarted();
+        }
+    }
+
+    /**
+     * Called by the server thread when the result of a job came back, or the job failed
+     */
+    public void jobFinished(String satelliteName, long latencyNanos) {
+        SatelliteLoad load = loads.get(satelliteName);
+        if (load != null) {
+            load.jobFinished(latencyNanos);
+        }
     }
 }
@@ -0,0 +1,20 @@
+package appserver.server;
+
+/**
+ * Class [PeakEwmaPolicy] Power-of-two-choices over the expected cost of a satellite, i.e. its
+ * peak-sensitive latency average multiplied by its outstanding jobs. Satellites that have become slow
+ * (GC, swapping, heavy jobs) are avoided even if their queue looks short.
+ */
+public class PeakEwmaPolicy extends PowerOfTwoChoicesPolicy {
+
+    @Override
+    protected SatelliteLoad better(SatelliteLoad a, SatelliteLoad b) {
+        double costA = a.getCost();
+        double costB = b.getCost();
+        if (costA == costB) {
+            // no latencies observed yet, fall back to the outstanding jobs
+            return super.better(a, b);
+        }
+        return costA < costB ? a : b;
+    }
+}
@@ -0,0 +1,35 @@
+package appserver.server;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class [PowerOfTwoChoicesPolicy] Samples two distinct satellites at random and takes the one
+ * with fewer outstanding jobs relative to its weight. Avoids both the herding of a pure least-loaded choice and a full scan.
+ */
+public class PowerOfTwoChoicesPolicy implements RoutingPolicy {
+
+    @Override
+    public SatelliteLoad select(List<SatelliteLoad> satellites) {
+        int size = satellites.size();
+        if (size == 1) {
+            return satellites.get(0);
+        }
+
+        // two distinct random indices
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = (first + 1 + random.nextInt(size - 1)) % size;
+
+        SatelliteLoad a = satellites.get(first);
+        SatelliteLoad b = satellites.get(second);
+        return better(a, b);
+    }
+
+    /**
+     * Compares two candidates, subclasses may use other load figures
+     */
+    protected SatelliteLoad better(SatelliteLoad a, SatelliteLoad b) {
+        return a.getRelativeLoad() <= b.getRelativeLoad() ? a : b;
+    }
+}
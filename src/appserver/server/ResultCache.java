@@ -0,0 +1,183 @@
+package appserver.server;
+
+import static appserver.comm.MessageTypes.JOB_RESULT;
+import appserver.comm.WireCodec;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class [ResultCache] Encoded results of jobs whose tools are deterministic, as reported by the satellites
+ * (see <code>appserver.job.Deterministic</code>). A job is identified by its encoded content, i.e. the tool
+ * name and the encoded parameters, so the request is never decoded. Least recently used results are dropped
+ * once the cache holds more than its maximum size, results older than the time to live are not used.
+ */
+public class ResultCache {
+
+    private final long maxBytes;
+    private final long ttlMillis;
+
+    // tools that may be cached
+    private final Set<String> tools = ConcurrentHashMap.newKeySet();
+
+    // in access order, the eldest entry is the least recently used one
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public ResultCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Allows the results of a tool to be cached
+     */
+    public void enable(String toolName) {
+        if (tools.add(toolName)) {
+            System.out.println("[ResultCache] Caching results of " + toolName);
+        }
+    }
+
+    /**
+     * The key of an encoded job request, null if the job's result must not be cached
+     */
+    public Key keyOf(byte[] request) {
+        if (maxBytes <= 0 || tools.isEmpty()) {
+            return null;
+        }
+        try {
+            String toolName = WireCodec.getToolName(request);
+            if (toolName == null || !tools.contains(toolName)) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        // the job without its timeout, a job asked for with another deadline has the same result
+        int offset = WireCodec.getJobOffset(request);
+        return offset < 0 ? null : new Key(Arrays.copyOfRange(request, offset, request.length));
+    }
+
+    /**
+     * A copy of the cached encoded response, null if there is none
+     */
+    public byte[] get(Key key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.currentTimeMillis() - entry.storedAt <= ttlMillis) {
+                    hits.incrementAndGet();
+                    // the caller puts its correlation id in
+                    return entry.response.clone();
+                }
+                remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Keeps the encoded response of a job, unless the job failed
+     */
+    public void put(Key key, byte[] response) {
+        if (WireCodec.getType(response) != JOB_RESULT) {
+            return;
+        }
+        Entry entry = new Entry(response.clone(), key.size() + response.length);
+        if (entry.size > maxBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                cachedBytes -= previous.size;
+            }
+            cachedBytes += entry.size;
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (cachedBytes > maxBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().size;
+                eldest.remove();
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Adds the figures of the cache to the server's metrics
+     */
+    public void addMetrics(Map<String, Object> metrics) {
+        synchronized (this) {
+            metrics.put("resultCache.entries", entries.size());
+            metrics.put("resultCache.bytes", cachedBytes);
+        }
+        metrics.put("resultCache.maxBytes", maxBytes);
+        metrics.put("resultCache.tools", tools.size());
+        metrics.put("resultCache.hits", hits.get());
+        metrics.put("resultCache.misses", misses.get());
+        metrics.put("resultCache.evicted", evicted.get());
+    }
+
+    // guarded by this
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            cachedBytes -= entry.size;
+            evicted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Class [Key] The encoded tool name and parameters of a job
+     */
+    public static class Key {
+
+        private final byte[] content;
+        private final int hash;
+
+        Key(byte[] content) {
+            this.content = content;
+            this.hash = Arrays.hashCode(content);
+        }
+
+        int size() {
+            return content.length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(content, ((Key) other).content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Class [Entry] A cached encoded response
+     */
+    private static class Entry {
+
+        final byte[] response;
+        final long size;
+        final long storedAt = System.currentTimeMillis();
+
+        Entry(byte[] response, long size) {
+            this.response = response;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package appserver.server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class [RoundRobinPolicy] Hands out the satellites one after the other, regardless of their load.
+ * If satellites have different weights, smooth weighted round robin is used: each satellite earns credit
+ * by its weight and the one with most credit is chosen, which interleaves the satellites by their shares.
+ * Only the weighted case takes a lock.
+ */
+public class RoundRobinPolicy implements RoutingPolicy {
+
+    private final AtomicInteger lastSatelliteIndex = new AtomicInteger(-1);
+
+    @Override
+    public SatelliteLoad select(List<SatelliteLoad> satellites) {
+        if (hasEqualWeights(satellites)) {
+            // increment the index and wrap it around the list size
+            int index = Math.floorMod(lastSatelliteIndex.incrementAndGet(), satellites.size());
+            return satellites.get(index);
+        }
+        return selectWeighted(satellites);
+    }
+
+    private synchronized SatelliteLoad selectWeighted(List<SatelliteLoad> satellites) {
+        SatelliteLoad best = null;
+        double totalWeight = 0;
+        for (SatelliteLoad satellite : satellites) {
+            satellite.roundRobinCredit += satellite.getWeight();
+            totalWeight += satellite.getWeight();
+            if (best == null || satellite.roundRobinCredit > best.roundRobinCredit) {
+                best = satellite;
+            }
+        }
+        best.roundRobinCredit -= totalWeight;
+        return best;
+    }
+
+    private static boolean hasEqualWeights(List<SatelliteLoad> satellites) {
+        double weight = satellites.get(0).getWeight();
+        for (SatelliteLoad satellite : satellites) {
+            if (satellite.getWeight() != weight) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
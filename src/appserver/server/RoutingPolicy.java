@@ -0,0 +1,23 @@
+package appserver.server;
+
+import java.util.List;
+
+/**
+ * Interface [RoutingPolicy] Strategy used by the LoadManager to pick the satellite
+ * that the next job is sent to.
+ */
+public interface RoutingPolicy {
+
+    /**
+     * Selects one of the given satellites; the list is never empty
+     */
+    public SatelliteLoad select(List<SatelliteLoad> satellites);
+
+    /**
+     * Selects one of the given satellites for a job of the given tool, null if the job does not name one;
+     * policies that do not care about tools ignore it
+     */
+    public default SatelliteLoad select(List<SatelliteLoad> satellites, String toolName) {
+        return select(satellites);
+    }
+}
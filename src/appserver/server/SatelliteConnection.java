@@ -0,0 +1,49 @@
+package appserver.server;
+
+import appserver.comm.Message;
+import appserver.comm.MultiplexedConnection;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class [SatelliteConnection] A long-lived, multiplexed connection to a satellite.
+ * Many jobs can be in flight on it at the same time, their results come back as the satellite finishes them.
+ */
+public class SatelliteConnection extends MultiplexedConnection {
+
+    // time of last use, needed for idle eviction and health checks
+    volatile long lastUsed = System.currentTimeMillis();
+
+    SatelliteConnection(String host, int port, int codec) throws IOException {
+        super(host, port, codec);
+    }
+
+    /**
+     * Forwards a job request to the satellite; the future completes with JOB_RESULT or JOB_ERROR
+     */
+    public CompletableFuture<Message> execute(Message message) {
+        lastUsed = System.currentTimeMillis();
+        return request(message.getType(), message.getContent());
+    }
+
+    /**
+     * Forwards an encoded job request to the satellite; the future completes with the encoded response
+     */
+    public CompletableFuture<byte[]> executeFrame(byte[] frame) {
+        lastUsed = System.currentTimeMillis();
+        return requestFrame(frame);
+    }
+
+    /**
+     * Health check, sends a PING and expects it to be echoed within the given time
+     */
+    boolean ping(int timeoutMillis) {
+        try {
+            Message reply = request(PING, null).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return reply.getType() == PING;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package appserver.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Class [SatelliteConnectionPool] Keeps a bounded number of persistent connections to one satellite.
+ * Connections are multiplexed, so a job does not borrow a connection exclusively but is put on the one
+ * with the fewest jobs in flight. A new connection is only opened while all existing ones are busy.
+ * Idle connections are health-checked and evicted periodically by <code>maintain()</code>.
+ * A pool that is drained takes no more jobs and closes each connection once its last job is done.
+ */
+public class SatelliteConnectionPool {
+
+    final String host;
+    final int port;
+    final int maxSize;
+    final long idleTimeoutMillis;
+    final int codec;
+
+    private final List<SatelliteConnection> connections = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    public SatelliteConnectionPool(String host, int port, int maxSize, long idleTimeoutMillis, int codec) {
+        this.host = host;
+        this.port = port;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.codec = codec;
+    }
+
+    /**
+     * Returns the connection a job should be sent on, opening one if needed
+     */
+    public SatelliteConnection get() throws IOException {
+        if (closed) {
+            throw new IOException("[SatelliteConnectionPool.get] Pool for " + host + ":" + port + " is closed");
+        }
+
+        SatelliteConnection best = null;
+        for (SatelliteConnection connection : connections) {
+            if (!connection.isOpen()) {
+                connections.remove(connection);
+            } else if (best == null || connection.getPendingCount() < best.getPendingCount()) {
+                best = connection;
+            }
+        }
+        if (best != null && (best.getPendingCount() == 0 || connections.size() >= maxSize)) {
+            return best;
+        }
+
+        synchronized (this) {
+            // another thread may have opened a connection in the meantime
+            if (connections.size() >= maxSize && best != null) {
+                return best;
+            }
+            SatelliteConnection connection = new SatelliteConnection(host, port, codec);
+            connections.add(connection);
+            return connection;
+        }
+    }
+
+    /**
+     * Closes idle connections that timed out and pings the others; called periodically by the server
+     */
+    public void maintain(int pingTimeoutMillis) {
+        long now = System.currentTimeMillis();
+        for (SatelliteConnection connection : connections) {
+            if (connection.getPendingCount() > 0) {
+                // busy connections prove their health with results
+                continue;
+            }
+            if (now - connection.lastUsed > idleTimeoutMillis || !connection.ping(pingTimeoutMillis)) {
+                connections.remove(connection);
+                if (connection.getPendingCount() > 0 && connection.isOpen()) {
+                    // a job got onto the connection in the meantime, keep it
+                    connections.add(connection);
+                } else {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops handing out connections; the jobs in flight go on, see <code>closeDrained()</code>
+     */
+    public void drain() {
+        closed = true;
+    }
+
+    /**
+     * Closes the connections of a drained pool that have no jobs in flight any more;
+     * returns true once all connections are closed
+     */
+    public boolean closeDrained() {
+        for (SatelliteConnection connection : connections) {
+            if (connection.getPendingCount() == 0 || !connection.isOpen()) {
+                connections.remove(connection);
+                connection.close();
+            }
+        }
+        return connections.isEmpty();
+    }
+
+    /**
+     * Closes all connections, jobs still in flight fail
+     */
+    public void close() {
+        closed = true;
+        for (SatelliteConnection connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+    }
+}
@@ -0,0 +1,110 @@
+package appserver.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class [SatelliteLoad] Keeps the load figures of one satellite, i.e. the number of jobs that are
+ * currently outstanding on it and a peak-sensitive moving average of its job latencies, along with
+ * the weight the satellite advertised, i.e. its share of jobs relative to the other satellites.
+ * Counters are updated by the server threads without taking any global lock.
+ */
+public class SatelliteLoad {
+
+    // decay time of the latency average, in nanoseconds
+    static final double DECAY_NANOS = 10_000_000_000.0;
+
+    final String name;
+    final AtomicInteger outstanding = new AtomicInteger();
+    // relative capacity, may change while the satellite is running
+    private volatile double weight = 1;
+    // jobs the satellite gets at a time, see DispatchQueue
+    private volatile int limit = Integer.MAX_VALUE;
+    // figures the satellite reported with its last heartbeat, e.g. the time its jobs wait for a worker
+    private volatile Map<String, Object> reported = Collections.emptyMap();
+
+    // credit of the smooth weighted round robin, guarded by the RoundRobinPolicy
+    double roundRobinCredit = 0;
+
+    // peak EWMA state, guarded by this object
+    private double ewmaNanos = 0;
+    private long lastUpdate = System.nanoTime();
+
+    public SatelliteLoad(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    void setWeight(double weight) {
+        this.weight = weight > 0 ? weight : 1;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    void setLimit(int limit) {
+        this.limit = limit > 0 ? limit : Integer.MAX_VALUE;
+    }
+
+    public Map<String, Object> getReported() {
+        return reported;
+    }
+
+    void setReported(Map<String, Object> reported) {
+        this.reported = reported;
+    }
+
+    public boolean hasCapacity() {
+        return outstanding.get() < limit;
+    }
+
+    /**
+     * Outstanding jobs relative to the weight, counting the job about to be placed,
+     * so that an idle large satellite is preferred over an idle small one
+     */
+    public double getRelativeLoad() {
+        return (outstanding.get() + 1) / weight;
+    }
+
+    void jobStarted() {
+        outstanding.incrementAndGet();
+    }
+
+    void jobFinished(long latencyNanos) {
+        outstanding.decrementAndGet();
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (latencyNanos > ewmaNanos) {
+                // latency peaks are taken over immediately ...
+                ewmaNanos = latencyNanos;
+            } else {
+                // ... while improvements decay in slowly
+                double weight = Math.exp(-(now - lastUpdate) / DECAY_NANOS);
+                ewmaNanos = ewmaNanos * weight + latencyNanos * (1.0 - weight);
+            }
+            lastUpdate = now;
+        }
+    }
+
+    /**
+     * Expected cost of sending one more job to this satellite: the latency average
+     * scaled by the number of jobs that would then be outstanding, relative to the weight
+     */
+    synchronized double getCost() {
+        return ewmaNanos * getRelativeLoad();
+    }
+}
@@ -1,8 +1,13 @@
 package appserver.server;
 
 import appserver.comm.ConnectivityInfo;
+import appserver.comm.WireCodec;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  *
@@ -12,17 +17,141 @@ public class SatelliteManager {
 
     // (the one) hash table that contains the connectivity information of all satellite servers
     static private Hashtable<String, ConnectivityInfo> satellites = null;
+    // connection pools, one per satellite
+    static private Hashtable<String, SatelliteConnectionPool> pools = null;
+    // time of the last sign of life of each satellite, registration or heartbeat
+    static private Hashtable<String, Long> heartbeats = null;
+    // pools of unregistered satellites, waiting for their jobs in flight
+    static private List<SatelliteConnectionPool> drainingPools = null;
+
+    int poolSize;
+    long idleTimeoutMillis;
+    // wire format used towards the satellites
+    int codec;
 
     public SatelliteManager() {
+        this(8, 60000, WireCodec.CODEC_BINARY);
+    }
+
+    public SatelliteManager(int poolSize, long idleTimeoutMillis, int codec) {
         satellites = new Hashtable<String, ConnectivityInfo>();
+        pools = new Hashtable<String, SatelliteConnectionPool>();
+        heartbeats = new Hashtable<String, Long>();
+        drainingPools = new CopyOnWriteArrayList<SatelliteConnectionPool>();
+        this.poolSize = poolSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.codec = codec;
     }
 
     public void registerSatellite(ConnectivityInfo satelliteInfo) {
         satellites.put(satelliteInfo.getName(), satelliteInfo);
+        heartbeats.put(satelliteInfo.getName(), System.currentTimeMillis());
+
+        // a satellite that registers again may have been restarted, drop its old connections
+        SatelliteConnectionPool oldPool = pools.put(satelliteInfo.getName(),
+                new SatelliteConnectionPool(satelliteInfo.getHost(), satelliteInfo.getPort(), poolSize, idleTimeoutMillis, codec));
+        if (oldPool != null) {
+            oldPool.close();
+        }
         System.out.println("[SatelliteManager] successfully added " + satelliteInfo.getName());
     }
 
+    /**
+     * Graceful removal: the satellite's pool takes no more jobs, but its jobs in flight are completed
+     */
+    public void unregisterSatellite(String satelliteName) {
+        satellites.remove(satelliteName);
+        heartbeats.remove(satelliteName);
+        SatelliteConnectionPool pool = pools.remove(satelliteName);
+        if (pool != null) {
+            pool.drain();
+            drainingPools.add(pool);
+        }
+        System.out.println("[SatelliteManager] draining " + satelliteName);
+    }
+
+    /**
+     * Removal of a satellite that is considered lost: its connections are closed, jobs in flight fail
+     */
+    public void removeSatellite(String satelliteName) {
+        satellites.remove(satelliteName);
+        heartbeats.remove(satelliteName);
+        SatelliteConnectionPool pool = pools.remove(satelliteName);
+        if (pool != null) {
+            pool.close();
+        }
+        System.out.println("[SatelliteManager] removed " + satelliteName);
+    }
+
+    /**
+     * Takes over the capacity a satellite advertises anew, returns false if the satellite is not registered
+     */
+    public boolean updateCapacity(ConnectivityInfo capacity) {
+        ConnectivityInfo satelliteInfo = satellites.get(capacity.getName());
+        if (satelliteInfo == null) {
+            return false;
+        }
+        satelliteInfo.setCores(capacity.getCores());
+        satelliteInfo.setMaxConcurrentJobs(capacity.getMaxConcurrentJobs());
+        satelliteInfo.setWeight(capacity.getWeight());
+        return true;
+    }
+
+    /**
+     * Records a heartbeat, returns false if the satellite is not registered (any more)
+     */
+    public boolean heartbeat(String satelliteName) {
+        if (!satellites.containsKey(satelliteName)) {
+            return false;
+        }
+        heartbeats.put(satelliteName, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Names of the satellites that have not shown a sign of life for the given time
+     */
+    public ArrayList<String> getExpiredSatellites(long heartbeatTimeoutMillis) {
+        long now = System.currentTimeMillis();
+        ArrayList<String> expired = new ArrayList<String>();
+        for (Map.Entry<String, Long> heartbeat : new ArrayList<Map.Entry<String, Long>>(heartbeats.entrySet())) {
+            if (now - heartbeat.getValue() > heartbeatTimeoutMillis) {
+                expired.add(heartbeat.getKey());
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Closes the connections of draining pools whose jobs are done
+     */
+    public void closeDrainedPools() {
+        for (SatelliteConnectionPool pool : drainingPools) {
+            if (pool.closeDrained()) {
+                drainingPools.remove(pool);
+            }
+        }
+    }
+
     public ConnectivityInfo getSatelliteForName(String satelliteName) {
         return satellites.get(satelliteName);
     }
+
+    public ArrayList<String> getSatelliteNames() {
+        return new ArrayList<String>(satellites.keySet());
+    }
+
+    public SatelliteConnectionPool getPoolForName(String satelliteName) {
+        return pools.get(satelliteName);
+    }
+
+    /**
+     * Health check and idle eviction of all connection pools
+     */
+    public void maintainPools(int pingTimeoutMillis) {
+        Enumeration<SatelliteConnectionPool> allPools = pools.elements();
+        while (allPools.hasMoreElements()) {
+            allPools.nextElement().maintain(pingTimeoutMillis);
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package appserver.server;
+
+import appserver.comm.Message;
+import appserver.comm.WireCodec;
+import static appserver.comm.MessageTypes.JOB_BATCH;
+import static appserver.comm.MessageTypes.JOB_RESULT;
+import appserver.job.Job;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class [ScatterGather] Runs a batch, i.e. one tool with a list of parameters, across the satellites. The
+ * parameters are split into chunks, each chunk is one JOB_BATCH round trip to the satellite the load manager
+ * picks, and the results of the chunks are put together in the order of the parameters. The chunks go through
+ * the dispatch queue like single jobs, so they are subject to the same admission control and retries.
+ */
+public class ScatterGather {
+
+    // parameters per chunk, 0 to size the chunks by the number of satellites
+    final int chunkSize;
+    // chunks per satellite when the chunks are sized automatically; more than one evens out slow satellites
+    final int chunksPerSatellite;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+
+    public ScatterGather(int chunkSize, int chunksPerSatellite) {
+        this.chunkSize = chunkSize;
+        this.chunksPerSatellite = Math.max(1, chunksPerSatellite);
+    }
+
+    /**
+     * Runs a batch, the returned future completes with the encoded response: JOB_RESULT with the list of
+     * results, or the first failed chunk's JOB_ERROR or OVERLOADED. It never completes exceptionally.
+     */
+    public CompletableFuture<byte[]> submit(Job batch, JobControl control) {
+        List<?> parameters = (List<?>) batch.getParameters();
+        int size = chunkSizeFor(parameters.size());
+        batches.incrementAndGet();
+
+        // scatter
+        ArrayList<CompletableFuture<byte[]>> responses = new ArrayList<>();
+        for (int from = 0; from < parameters.size(); from += size) {
+            // a copy, a sublist would be sent as a serialized object
+            List<?> chunk = new ArrayList<>(parameters.subList(from, Math.min(from + size, parameters.size())));
+            byte[] request;
+            try {
+                request = WireCodec.encodeMessage(new Message(JOB_BATCH, new Job(batch.getToolName(), chunk, batch.getTimeoutMillis(), batch.getPriority())));
+            } catch (IOException e) {
+                return CompletableFuture.completedFuture(Server.errorFrame(e.toString()));
+            }
+            responses.add(Server.dispatchQueue.submit(request, control));
+            chunks.incrementAndGet();
+        }
+
+        // gather, in the order of the chunks
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            ArrayList<Object> results = new ArrayList<>(parameters.size());
+            for (CompletableFuture<byte[]> response : responses) {
+                byte[] frame = response.join();
+                if (WireCodec.getType(frame) != JOB_RESULT) {
+                    return frame;
+                }
+                try {
+                    results.addAll((List<?>) WireCodec.decodeMessage(frame).getContent());
+                } catch (IOException e) {
+                    return Server.errorFrame(e.toString());
+                }
+            }
+            try {
+                return WireCodec.encodeMessage(new Message(JOB_RESULT, results));
+            } catch (IOException e) {
+                return Server.errorFrame(e.toString());
+            }
+        });
+    }
+
+    /**
+     * Adds the figures of the batches to the server's metrics
+     */
+    public void addMetrics(Map<String, Object> metrics) {
+        metrics.put("batch.batches", batches.get());
+        metrics.put("batch.chunks", chunks.get());
+    }
+
+    private int chunkSizeFor(int parameters) {
+        if (chunkSize > 0) {
+            return chunkSize;
+        }
+        int chunkCount = Math.max(1, Server.loadManager.getSatelliteCount() * chunksPerSatellite);
+        return Math.max(1, (parameters + chunkCount - 1) / chunkCount);
+    }
+}
@@ -1,15 +1,49 @@
 package appserver.server;
 
+import appserver.comm.BinaryMessageChannel;
 import appserver.comm.Message;
+import appserver.comm.MessageChannel;
+import appserver.comm.MessageChannelFactory;
+import appserver.comm.ObjectMessageChannel;
+import appserver.comm.WireCodec;
+import static appserver.comm.MessageTypes.CANCEL_JOB;
+import static appserver.comm.MessageTypes.DETERMINISTIC_TOOL;
+import static appserver.comm.MessageTypes.HEARTBEAT;
+import static appserver.comm.MessageTypes.IDEMPOTENT_TOOL;
+import static appserver.comm.MessageTypes.JOB_BATCH;
+import static appserver.comm.MessageTypes.JOB_ERROR;
 import static appserver.comm.MessageTypes.JOB_REQUEST;
+import static appserver.comm.MessageTypes.JOB_RESULT;
+import static appserver.comm.MessageTypes.JOB_STATUS;
+import static appserver.comm.MessageTypes.JOB_SUBMIT;
+import static appserver.comm.MessageTypes.LIST_TOOLS;
+import static appserver.comm.MessageTypes.METRICS;
+import static appserver.comm.MessageTypes.OVERLOADED;
+import static appserver.comm.MessageTypes.PING;
 import static appserver.comm.MessageTypes.REGISTER_SATELLITE;
+import static appserver.comm.MessageTypes.REGISTER_TOOL;
+import static appserver.comm.MessageTypes.SATELLITE_METRICS;
+import static appserver.comm.MessageTypes.TENANT;
+import static appserver.comm.MessageTypes.UNREGISTER_SATELLITE;
+import static appserver.comm.MessageTypes.UPDATE_CAPACITY;
 import appserver.comm.ConnectivityInfo;
+import appserver.job.Job;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import utils.ExecutorFactory;
 import utils.PropertyHandler;
 
 /**
@@ -22,22 +56,79 @@ public class Server {
     static SatelliteManager satelliteManager = null;
     static LoadManager loadManager = null;
     static ServerSocket serverSocket = null;
+    static ToolCatalog toolCatalog = null;
+    static DispatchQueue dispatchQueue = null;
+    static JobStore jobStore = null;
+    static ScatterGather scatterGather = null;
+    static ResultCache resultCache = null;
+    static InFlightJobs inFlightJobs = new InFlightJobs();
+    static Hedging hedging = null;
+
+    // jobs a satellite gets at a time, 0 for twice the concurrent jobs it advertises
+    static int maxJobsPerSatellite = 0;
+
+    // satellites without a heartbeat for this time are taken out of the rotation
+    static int heartbeatTimeoutMillis = 6000;
+    // how often a job whose satellite got lost is sent to another one
+    static int maxRetries = 2;
+
+    // time a registering satellite gets to preload and warm up the tools before it gets traffic anyway
+    static int warmUpTimeoutMillis = 30000;
+
+    // interval of the connection pool health checks
+    static int healthCheckIntervalMillis = 10000;
+    // runs the ServerThreads, configured by EXECUTOR, POOL_SIZE and QUEUE_SIZE
+    static Executor connectionExecutor = null;
 
     public Server(String serverPropertiesFile) {
         int port;
         
-        // create satellite manager and load manager
-        // ...
-        satelliteManager = new SatelliteManager();
-        System.out.println("[Server] set up SatelliteManager");
-        
-        loadManager = new LoadManager();
-        System.out.println("[Server] set up LoadManager");
-        
-        // read server properties and create server socket
+        // read server properties, create satellite manager, load manager and server socket
         try
         {
             PropertyHandler appServerProps = new PropertyHandler(serverPropertiesFile);
+
+            satelliteManager = new SatelliteManager(appServerProps.getIntProperty("SATELLITE_POOL_SIZE", 8),
+                    appServerProps.getIntProperty("SATELLITE_POOL_IDLE_TIMEOUT", 60000),
+                    MessageChannelFactory.codecForName(appServerProps.getProperty("WIRE_CODEC")));
+            healthCheckIntervalMillis = appServerProps.getIntProperty("HEALTH_CHECK_INTERVAL", healthCheckIntervalMillis);
+            System.out.println("[Server] set up SatelliteManager");
+
+            loadManager = new LoadManager(appServerProps.getProperty("ROUTING_POLICY"));
+            System.out.println("[Server] set up LoadManager");
+
+            toolCatalog = new ToolCatalog(appServerProps.getProperty("TOOLS"));
+            System.out.println("[Server] set up ToolCatalog");
+            warmUpTimeoutMillis = appServerProps.getIntProperty("WARMUP_TIMEOUT", warmUpTimeoutMillis);
+            heartbeatTimeoutMillis = appServerProps.getIntProperty("HEARTBEAT_TIMEOUT", heartbeatTimeoutMillis);
+            maxRetries = appServerProps.getIntProperty("MAX_RETRIES", maxRetries);
+
+            dispatchQueue = new DispatchQueue(appServerProps.getIntProperty("MAX_JOBS_IN_FLIGHT", 256),
+                    appServerProps.getIntProperty("DISPATCH_QUEUE_SIZE", 1000),
+                    appServerProps.getIntProperty("RETRY_AFTER", 1000),
+                    appServerProps.getIntProperty("PRIORITY_AGING", 5000), appServerProps);
+            maxJobsPerSatellite = appServerProps.getIntProperty("MAX_JOBS_PER_SATELLITE", maxJobsPerSatellite);
+            System.out.println("[Server] set up DispatchQueue");
+
+            jobStore = new JobStore(appServerProps.getIntProperty("MAX_STORED_JOBS", 10000),
+                    appServerProps.getIntProperty("RESULT_TTL", 300000));
+            System.out.println("[Server] set up JobStore");
+
+            scatterGather = new ScatterGather(appServerProps.getIntProperty("BATCH_CHUNK_SIZE", 0),
+                    appServerProps.getIntProperty("BATCH_CHUNKS_PER_SATELLITE", 2));
+            System.out.println("[Server] set up ScatterGather");
+
+            resultCache = new ResultCache(appServerProps.getIntProperty("RESULT_CACHE_SIZE", 16 * 1024 * 1024),
+                    appServerProps.getIntProperty("RESULT_CACHE_TTL", 600000));
+            System.out.println("[Server] set up ResultCache");
+
+            hedging = new Hedging(appServerProps.getIntProperty("HEDGE_PERCENTILE", 95),
+                    appServerProps.getIntProperty("HEDGE_BUDGET", 10),
+                    ExecutorFactory.create(appServerProps, "HEDGE_", "Hedge"));
+            System.out.println("[Server] set up Hedging");
+
+            connectionExecutor = ExecutorFactory.create(appServerProps, "", "ServerThread");
+
             port = Integer.parseInt(appServerProps.getProperty("PORT"));
             serverSocket = new ServerSocket(port);
             System.out.println("[Server] successfully set up ServerSocket.");
@@ -49,15 +140,66 @@ public class Server {
     }
 
     public void run() {
+    // check the satellite connection pools in the background
+        Thread poolMaintenance = new Thread(() -> {
+            while (true)
+            {
+                try
+                {
+                    Thread.sleep(healthCheckIntervalMillis);
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                Server.satelliteManager.maintainPools(healthCheckIntervalMillis / 2);
+            }
+        }, "SatellitePoolMaintenance");
+        poolMaintenance.setDaemon(true);
+        poolMaintenance.start();
+
+    // eject satellites that missed their heartbeats, close the pools of drained ones, drop expired job results
+        Thread reaper = new Thread(() -> {
+            while (true)
+            {
+                try
+                {
+                    Thread.sleep(Math.min(1000, heartbeatTimeoutMillis / 2));
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                for (String satelliteName : Server.satelliteManager.getExpiredSatellites(heartbeatTimeoutMillis))
+                {
+                    removeSatellite(satelliteName, "no heartbeat");
+                }
+                Server.satelliteManager.closeDrainedPools();
+                Server.jobStore.evictExpired();
+                Server.dispatchQueue.evictIdleTenants();
+            }
+        }, "SatelliteReaper");
+        reaper.setDaemon(true);
+        reaper.start();
+
     // serve clients in server loop ...
-    // when a request comes in, a ServerThread object is spawned
+    // when a request comes in, a ServerThread object is handed to the connection executor
     // ...
         while(true)
         {
             try
             {
                 Socket socket = serverSocket.accept();
-                (new ServerThread(socket)).start();
+                try
+                {
+                    connectionExecutor.execute(new ServerThread(socket));
+                }
+                catch(RejectedExecutionException e)
+                {
+                    // all pool threads busy and the queue is full
+                    System.err.println("[Server.run] Too many connections, closing " + socket.getRemoteSocketAddress());
+                    socket.close();
+                }
             }
             catch(IOException e)
             {
@@ -66,115 +208,648 @@ public class Server {
         }
     }
 
+    /**
+     * Runs an encoded job request: answers it out of the result cache if its tool is deterministic and it has
+     * been run before, or attaches it to the same job if that is running right now, otherwise passes it through
+     * admission control to the satellites. The returned future never completes exceptionally.
+     */
+    static CompletableFuture<byte[]> execute(byte[] request, JobControl control) {
+        ResultCache.Key key = Server.resultCache.keyOf(request);
+        if (key == null)
+        {
+            return Server.dispatchQueue.submit(request, control);
+        }
+
+        byte[] cached = Server.resultCache.get(key);
+        if (cached != null)
+        {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return Server.inFlightJobs.run(key, control, shared -> Server.dispatchQueue.submit(request, shared).thenApply(result -> {
+            // cached before the job stops being in flight, so that the next request finds it either way
+            Server.resultCache.put(key, result);
+            return result;
+        }));
+    }
+
+    /**
+     * Sends an encoded job request to the next satellite chosen by the load manager. The job's parameters
+     * are not decoded, only the header is looked at. If the satellite gets lost before it answers, the job
+     * is sent to another satellite, up to MAX_RETRIES times. A slow job of an idempotent tool may be sent to
+     * a second satellite, see Hedging. The returned future completes with the satellite's encoded JOB_RESULT
+     * or JOB_ERROR message; it never completes exceptionally. When the job is cancelled, the satellite is sent
+     * CANCEL_JOB and the job is not retried.
+     */
+    static CompletableFuture<byte[]> dispatch(byte[] request, JobControl control) {
+        return Server.hedging.dispatch(request, control);
+    }
+
+    /**
+     * Sends an encoded job request to a satellite that is not in the given set, if there is one, and adds the
+     * satellite to the set; null for any satellite
+     */
+    static CompletableFuture<byte[]> dispatch(byte[] request, Set<String> excluded, JobControl control) {
+        return dispatch(request, maxRetries, excluded, control);
+    }
+
+    private static CompletableFuture<byte[]> dispatch(byte[] request, int retriesLeft, Set<String> excluded, JobControl control) {
+        String satelliteName;
+        String toolName;
+        SatelliteConnection satellite;
+
+        if (control.isCancelled())
+        {
+            return CompletableFuture.completedFuture(control.cancelledFrame());
+        }
+
+        // get next satellite from load manager, the policy does not need a lock
+        try
+        {
+            toolName = WireCodec.getToolName(request);
+            satelliteName = Server.loadManager.nextSatellite(toolName, excluded);
+            if (excluded != null)
+            {
+                excluded.add(satelliteName);
+            }
+            // get a pooled connection to the satellite from the satellite manager
+            SatelliteConnectionPool pool = Server.satelliteManager.getPoolForName(satelliteName);
+            if (pool == null)
+            {
+                throw new IOException("[Server.dispatch] Satellite " + satelliteName + " is gone");
+            }
+            try
+            {
+                satellite = pool.get();
+            }
+            catch(IOException e)
+            {
+                // nobody listening, do not wait for the missing heartbeats; if it is alive after all, its next heartbeat brings it back
+                removeSatellite(satelliteName, e.toString());
+                throw e;
+            }
+            System.out.println("[Sever.dispatch] Running " + toolName + " with satellite: " + satelliteName);
+        }
+        catch(Exception e)
+        {
+            System.out.println(e);
+            if (retriesLeft > 0 && e instanceof IOException)
+            {
+                // the satellite is unreachable or just went away, try another one
+                return dispatch(request, retriesLeft - 1, excluded, control);
+            }
+            return CompletableFuture.completedFuture(errorFrame(e.toString()));
+        }
+
+        long start = System.nanoTime();
+        Server.loadManager.jobStarted(satelliteName);
+
+        // forward request to satellite, the result comes back on the connection's reader thread
+        CompletableFuture<byte[]> sent = satellite.executeFrame(request);
+        // the satellite knows the job by the correlation id of its connection
+        long satelliteCorrelationId = WireCodec.getCorrelationId(request);
+        control.whenCancelled(() -> satellite.cancel(satelliteCorrelationId));
+
+        return sent.handle((result, e) -> {
+            // job is done (or failed), update the satellite's load figures
+            Server.loadManager.jobFinished(satelliteName, System.nanoTime() - start);
+            if (e == null)
+            {
+                return CompletableFuture.completedFuture(result);
+            }
+            System.out.println(e);
+            if (retriesLeft > 0 && !control.isCancelled())
+            {
+                // the connection to the satellite broke, the job is sent again
+                System.out.println("[Server.dispatch] Retrying " + toolName + " on another satellite");
+                return dispatch(request, retriesLeft - 1, excluded, control);
+            }
+            return CompletableFuture.completedFuture(errorFrame(e.toString()));
+        }).thenCompose(response -> response);
+    }
+
+    /**
+     * Number of jobs a satellite gets at a time, 0 for no limit
+     */
+    static int jobLimitOf(ConnectivityInfo satelliteInfo) {
+        if (maxJobsPerSatellite > 0)
+        {
+            return maxJobsPerSatellite;
+        }
+        // some jobs in the satellite's queue keep its workers busy between two jobs
+        return 2 * satelliteInfo.getMaxConcurrentJobs();
+    }
+
+    /**
+     * Current figures of the server, answer to a METRICS message
+     */
+    static LinkedHashMap<String, Object> metrics() {
+        LinkedHashMap<String, Object> metrics = new LinkedHashMap<>();
+        Server.dispatchQueue.addMetrics(metrics);
+        Server.jobStore.addMetrics(metrics);
+        Server.scatterGather.addMetrics(metrics);
+        Server.resultCache.addMetrics(metrics);
+        Server.inFlightJobs.addMetrics(metrics);
+        Server.hedging.addMetrics(metrics);
+        Server.loadManager.addMetrics(metrics);
+        return metrics;
+    }
+
+    /**
+     * Takes a satellite that is considered lost out of the rotation and closes its connections
+     */
+    static void removeSatellite(String satelliteName, String reason) {
+        System.err.println("[Server.removeSatellite] Removing satellite " + satelliteName + ": " + reason);
+        Server.loadManager.satelliteRemoved(satelliteName);
+        Server.satelliteManager.removeSatellite(satelliteName);
+    }
+
+    /**
+     * Pushes tools to a satellite with a LIST_TOOLS message; the satellite answers once it has loaded them
+     * and run their warm-up jobs. The returned future never completes exceptionally.
+     */
+    static CompletableFuture<Message> preloadTools(String satelliteName, ArrayList<Job> tools) {
+        CompletableFuture<Message> preloaded;
+        try
+        {
+            preloaded = Server.satelliteManager.getPoolForName(satelliteName).get().execute(new Message(LIST_TOOLS, tools));
+        }
+        catch(Exception e)
+        {
+            preloaded = new CompletableFuture<>();
+            preloaded.completeExceptionally(e);
+        }
+
+        return preloaded.orTimeout(warmUpTimeoutMillis, TimeUnit.MILLISECONDS).handle((response, e) -> {
+            if (e != null)
+            {
+                System.err.println("[Server.preloadTools] Satellite " + satelliteName + " did not preload the tools: " + e);
+                return null;
+            }
+            System.out.println("[Server.preloadTools] Satellite " + satelliteName + " preloaded " + response.getContent());
+            return response;
+        });
+    }
+
+    /**
+     * Encoded JOB_ERROR message
+     */
+    static byte[] errorFrame(String error) {
+        try
+        {
+            return WireCodec.encodeMessage(new Message(JOB_ERROR, error));
+        }
+        catch(IOException e)
+        {
+            // strings can always be encoded
+            throw new IllegalStateException(e);
+        }
+    }
+
     // objects of this helper class communicate with satellites or clients
-    private class ServerThread extends Thread {
+    // a client connection either carries one plain job request, answered by the bare result,
+    // or many job requests with correlation ids, answered by JOB_RESULT/JOB_ERROR messages as they complete
+    private class ServerThread implements Runnable {
 
         Socket client = null;
-        ObjectInputStream readFromNet = null;
-        ObjectOutputStream writeToNet = null;
+        MessageChannel channel = null;
         Message message = null;
+        // multiplexed requests that have not been answered yet, by correlation id
+        ConcurrentHashMap<Long, JobControl> controls = new ConcurrentHashMap<>();
+        // whose share the jobs of this connection count towards: named by the client, else the connection itself
+        volatile String tenant;
 
         private ServerThread(Socket client) {
             this.client = client;
+            tenant = client.getInetAddress().getHostAddress() + ":" + client.getPort();
         }
 
         @Override
         public void run() {
-            String satelliteName;
-            ConnectivityInfo satelliteInfo;
-            // set up object streams and read message
+            // negotiate the wire format and read messages
             System.out.println("[Server] starting new thread...");
             try
             {
-                writeToNet = new ObjectOutputStream(client.getOutputStream());
-                readFromNet = new ObjectInputStream(client.getInputStream());
+                channel = MessageChannelFactory.accept(client);
             }
             catch(IOException e)
             {
                 System.err.println(e);
-            }  
+                closeConnection();
+                return;
+            }
 
-            
-            // read initial registration message
-            try
+            // serve messages until the client closes the connection
+            while (true)
+            {
+                try
+                {
+                    if (channel instanceof BinaryMessageChannel)
+                    {
+                        // binary clients: job requests are forwarded as they are, without decoding them
+                        byte[] frame = ((BinaryMessageChannel) channel).readFrame();
+                        if (WireCodec.getType(frame) == JOB_REQUEST)
+                        {
+                            if (!processJob(frame))
+                            {
+                                break;
+                            }
+                            continue;
+                        }
+                        if (WireCodec.getType(frame) == JOB_SUBMIT)
+                        {
+                            submitJob(frame);
+                            continue;
+                        }
+                        message = WireCodec.decodeMessage(frame);
+                    }
+                    else
+                    {
+                        message = channel.read();
+                    }
+                }
+                catch(EOFException e)
+                {
+                    break;
+                }
+                catch(IOException e)
+                {
+                    System.err.println(e);
+                    break;
+                }
+
+                if (!processMessage(message))
+                {
+                    break;
+                }
+            }
+
+            // nobody is going to read the results
+            for (JobControl control : controls.values())
             {
-                message = (Message) readFromNet.readObject();
+                control.cancel("Client disconnected");
             }
-            catch(IOException | ClassNotFoundException e)
+            closeConnection();
+        }
+
+        /**
+         * Forwards an encoded job request, returns false if there is nothing more to be read on this connection
+         */
+        private boolean processJob(byte[] request) {
+            System.err.println("\n[ServerThread.run] Received job request");
+
+            long correlationId = WireCodec.getCorrelationId(request);
+            JobControl control = track(correlationId, WireCodec.getTimeout(request));
+            // out of the cache or through admission control: the job may wait for room at the satellites or be rejected
+            return reply(control.bound(execute(request, control)), correlationId);
+        }
+
+        /**
+         * Runs a batch across the satellites, returns false if there is nothing more to be read on this connection
+         */
+        private boolean processBatch(Message message) {
+            System.err.println("\n[ServerThread.run] Received batch request");
+
+            long correlationId = message.getCorrelationId();
+            CompletableFuture<byte[]> response;
+            Object content = message.getContent();
+            if (content instanceof Job && ((Job) content).getParameters() instanceof List)
             {
-                System.err.println(e);
+                Job batch = (Job) content;
+                JobControl control = track(correlationId, batch.getTimeoutMillis());
+                response = control.bound(Server.scatterGather.submit(batch, control));
             }
-            
+            else
+            {
+                response = CompletableFuture.completedFuture(errorFrame("[Server] A batch needs a job with a list of parameters"));
+            }
+            return reply(response, correlationId);
+        }
+
+        /**
+         * Control of a request with the given timeout; a multiplexed request can be cancelled with CANCEL_JOB
+         * until it is answered
+         */
+        private JobControl track(long correlationId, long timeoutMillis) {
+            JobControl control = JobControl.create(timeoutMillis, tenant);
+            if (correlationId != 0)
+            {
+                controls.put(correlationId, control);
+            }
+            return control;
+        }
+
+        /**
+         * Sends the response to a job or batch request, returns false if there is nothing more to be read on this connection
+         */
+        private boolean reply(CompletableFuture<byte[]> response, long correlationId) {
+            if (correlationId == 0)
+            {
+                // plain request: wait for the result, then this connection is done
+                sendResponse(response.join(), 0);
+                return false;
+            }
+
+            // multiplexed request: answer whenever the satellite is done, keep reading meanwhile
+            response.thenAccept(result -> {
+                controls.remove(correlationId);
+                sendResponse(result, correlationId);
+            });
+            return true;
+        }
+
+        /**
+         * Starts an encoded job request in the background and answers with the job's id, under which
+         * the client asks for the job's status and result later
+         */
+        private void submitJob(byte[] request) {
+            long correlationId = WireCodec.getCorrelationId(request);
+            // to the satellites, it is an ordinary job request
+            WireCodec.setType(request, JOB_REQUEST);
+            // the job outlives the connection, it can only run past its deadline
+            JobControl control = JobControl.create(WireCodec.getTimeout(request), tenant);
+            CompletableFuture<byte[]> response = control.bound(execute(request, control));
+            if (response.isDone() && WireCodec.getType(response.join()) == OVERLOADED)
+            {
+                // rejected right away, there is no job to ask for later
+                sendResponse(response.join(), correlationId);
+                return;
+            }
+
+            long jobId = Server.jobStore.add(response);
+            if (jobId == 0)
+            {
+                // the store is full of running jobs and nobody could ask for the result; the job is stopped, as
+                // OVERLOADED tells the client that it may submit the job again
+                System.err.println("[ServerThread.submitJob] Job store is full");
+                control.cancel("Job store is full");
+                sendResponse(Server.dispatchQueue.overloadedFrame(), correlationId);
+                return;
+            }
+            System.out.println("[ServerThread.submitJob] Submitted job " + jobId);
+            send(new Message(JOB_SUBMIT, jobId, correlationId));
+        }
+
+        /**
+         * Sends the result of a submitted job once it is done
+         */
+        private void sendJobResult(long jobId, long correlationId) {
+            CompletableFuture<byte[]> response = Server.jobStore.get(jobId);
+            if (response == null)
+            {
+                send(new Message(JOB_ERROR, "Unknown job " + jobId, correlationId));
+                return;
+            }
+            // the stored result may be sent to several clients, each gets its own copy to put its correlation id in
+            response.thenAccept(result -> sendResponse(result.clone(), correlationId));
+        }
+
+        /**
+         * Processes one message, returns false if there is nothing more to be read on this connection
+         */
+        private boolean processMessage(Message message) {
+            String satelliteName;
+            ConnectivityInfo satelliteInfo;
+
             // process message
             switch (message.getType()) {
                 case REGISTER_SATELLITE:
-                    // read satellite info
+                    registerSatellite((ConnectivityInfo) message.getContent());
+                    break;
+
+                case SATELLITE_METRICS:
+                    // sent along with the heartbeats: how long the satellite's jobs wait and run
+                    if (!(message.getContent() instanceof Map<?, ?>))
+                    {
+                        System.err.println("[ServerThread.run] Satellite metrics are not a map: " + message.getContent());
+                        break;
+                    }
+                    Map<String, Object> reported = new LinkedHashMap<>();
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) message.getContent()).entrySet())
+                    {
+                        reported.put(String.valueOf(entry.getKey()), entry.getValue());
+                    }
+                    Server.loadManager.metricsReported((String) reported.remove("name"), reported);
+                    break;
+
+                case HEARTBEAT:
+                    // the registration connection carries the satellite's heartbeats
                     satelliteInfo = (ConnectivityInfo) message.getContent();
-                    satelliteName = satelliteInfo.getName();
-                    System.out.println("[ServerThread.run] Registering satellite " + satelliteName);
-                    
-                    // register satellite
-                    synchronized (Server.satelliteManager) {
-                        Server.satelliteManager.registerSatellite(satelliteInfo);
+                    if (!Server.satelliteManager.heartbeat(satelliteInfo.getName()))
+                    {
+                        // removed after missing heartbeats, but alive after all
+                        System.out.println("[ServerThread.run] Heartbeat from unknown satellite " + satelliteInfo.getName());
+                        registerSatellite(satelliteInfo);
                     }
+                    break;
 
-                    // add satellite to loadManager
-                    synchronized (Server.loadManager) {
-                        Server.loadManager.satelliteAdded(satelliteName);
+                case UPDATE_CAPACITY:
+                    // the satellite got more or less capacity, e.g. it is throttled
+                    satelliteInfo = (ConnectivityInfo) message.getContent();
+                    if (Server.satelliteManager.updateCapacity(satelliteInfo))
+                    {
+                        System.out.println("[ServerThread.run] Satellite " + satelliteInfo.getName() + " has weight " + satelliteInfo.getEffectiveWeight() + " now");
+                        Server.loadManager.capacityChanged(satelliteInfo.getName(), satelliteInfo.getEffectiveWeight(), jobLimitOf(satelliteInfo));
+                        Server.dispatchQueue.capacityChanged();
                     }
+                    break;
 
+                case UNREGISTER_SATELLITE:
+                    // graceful shutdown: no new jobs, the ones in flight are completed
+                    satelliteName = (String) message.getContent();
+                    System.out.println("[ServerThread.run] Unregistering satellite " + satelliteName);
+                    Server.loadManager.satelliteRemoved(satelliteName);
+                    Server.satelliteManager.unregisterSatellite(satelliteName);
                     break;
 
-                case JOB_REQUEST:
-                    System.err.println("\n[ServerThread.run] Received job request");
+                case REGISTER_TOOL:
+                    // add the tool to the catalog and have the satellites known so far load it right away
+                    Job tool = (Job) message.getContent();
+                    System.out.println("[ServerThread.run] Registering tool " + tool.getToolName());
+                    Server.toolCatalog.register(tool);
 
-                    satelliteName = null;
-                    synchronized (Server.loadManager) {
-                        // get next satellite from load manager
-                        try
-                        {
-                            satelliteName = Server.loadManager.nextSatellite();
-                        }
-                        catch(Exception e)
-                        {
-                            System.out.println(e);
-                        }
-                        
-                        // get connectivity info for next satellite from satellite manager
-                        satelliteInfo = Server.satelliteManager.getSatelliteForName(satelliteName);
+                    ArrayList<Job> newTool = new ArrayList<>();
+                    newTool.add(tool);
+                    for (String name : Server.satelliteManager.getSatelliteNames())
+                    {
+                        preloadTools(name, newTool);
+                    }
+                    send(new Message(REGISTER_TOOL, tool.getToolName(), message.getCorrelationId()));
+                    break;
+
+                case DETERMINISTIC_TOOL:
+                    // a satellite found that the tool's results depend on its parameters only
+                    Server.resultCache.enable((String) message.getContent());
+                    break;
+
+                case IDEMPOTENT_TOOL:
+                    // a satellite found that the tool's jobs may be run twice
+                    Server.hedging.enable((String) message.getContent());
+                    break;
+
+                case LIST_TOOLS:
+                    send(new Message(LIST_TOOLS, Server.toolCatalog.list(), message.getCorrelationId()));
+                    break;
+
+                case METRICS:
+                    send(new Message(METRICS, metrics(), message.getCorrelationId()));
+                    break;
+
+                case JOB_REQUEST:
+                    // object stream clients: encode once, from here on the job travels as bytes
+                    try
+                    {
+                        return processJob(WireCodec.encodeMessage(message));
+                    }
+                    catch(IOException e)
+                    {
+                        System.err.println(e);
+                        send(new Message(JOB_ERROR, e.toString(), message.getCorrelationId()));
+                        return message.getCorrelationId() != 0;
                     }
 
-                    Socket satellite = null;
-                    
-                    // connect to satellite
+                case JOB_SUBMIT:
                     try
                     {
-                        System.out.println("[Sever.run] Running job with satellite: " + satelliteInfo.getName());
-                        satellite = new Socket(satelliteInfo.getHost(), satelliteInfo.getPort());
-                        
-                        // open object streams,
-                        ObjectOutputStream writeToSat = new ObjectOutputStream(satellite.getOutputStream());
-                        ObjectInputStream readFromSat = new ObjectInputStream(satellite.getInputStream());
-                        
-                        // forward message (as is) to satellite,
-                        writeToSat.writeObject(message);
-                        
-                        // receive result from satellite and
-                        Object result = readFromSat.readObject();
-                        
-                        // write result back to client
-                        writeToNet.writeObject(result);
+                        submitJob(WireCodec.encodeMessage(message));
                     }
-                    catch(IOException | ClassNotFoundException e)
+                    catch(IOException e)
                     {
-                        System.out.println(e);
+                        System.err.println(e);
+                        send(new Message(JOB_ERROR, e.toString(), message.getCorrelationId()));
                     }
+                    break;
+
+                case JOB_BATCH:
+                    return processBatch(message);
+
+                case CANCEL_JOB:
+                    // the client gave up on one of its requests on this connection
+                    JobControl control = controls.get((Long) message.getContent());
+                    if (control != null)
+                    {
+                        control.cancel("Cancelled by client");
+                    }
+                    break;
+
+                case TENANT:
+                    // the client names the tenant its jobs count towards
+                    tenant = (String) message.getContent();
+                    System.out.println("[ServerThread.run] Connection of tenant " + tenant);
+                    break;
+
+                case JOB_STATUS:
+                    send(new Message(JOB_STATUS, Server.jobStore.getStatus((Long) message.getContent()), message.getCorrelationId()));
+                    break;
 
+                case JOB_RESULT:
+                    // waits for the submitted job, the connection keeps being read meanwhile
+                    sendJobResult((Long) message.getContent(), message.getCorrelationId());
+                    break;
+
+                case PING:
+                    send(message);
                     break;
 
                 default:
                     System.err.println("[ServerThread.run] Warning: Message type not implemented");
             }
+            return true;
+        }
+
+        /**
+         * Registers a satellite and adds it to the load manager, once it has loaded and warmed up the known tools
+         */
+        private void registerSatellite(ConnectivityInfo satelliteInfo) {
+            String satelliteName = satelliteInfo.getName();
+            if (satelliteInfo.getHost() == null)
+            {
+                // satellites do not know their address, take it from the connection
+                satelliteInfo.setHost(client.getInetAddress().getHostAddress());
+            }
+            System.out.println("[ServerThread.run] Registering satellite " + satelliteName + " with " + satelliteInfo.getCores()
+                    + " cores, " + satelliteInfo.getMaxConcurrentJobs() + " concurrent jobs, weight " + satelliteInfo.getEffectiveWeight());
+
+            // register satellite
+            synchronized (Server.satelliteManager) {
+                Server.satelliteManager.registerSatellite(satelliteInfo);
+            }
+
+            // add satellite to loadManager, after it has loaded and warmed up the known tools
+            ArrayList<Job> tools = Server.toolCatalog.list();
+            if (tools.isEmpty())
+            {
+                Server.loadManager.satelliteAdded(satelliteName, satelliteInfo.getEffectiveWeight(), jobLimitOf(satelliteInfo));
+                Server.dispatchQueue.capacityChanged();
+            }
+            else
+            {
+                preloadTools(satelliteName, tools).thenRun(() -> {
+                    // unless it got lost in the meantime
+                    ConnectivityInfo registered = Server.satelliteManager.getSatelliteForName(satelliteName);
+                    if (registered != null)
+                    {
+                        Server.loadManager.satelliteAdded(satelliteName, registered.getEffectiveWeight(), jobLimitOf(registered));
+                        Server.dispatchQueue.capacityChanged();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Writes the encoded response to a job request back to the client, under the client's correlation id
+         */
+        private void sendResponse(byte[] response, long correlationId) {
+            try
+            {
+                if (channel instanceof BinaryMessageChannel)
+                {
+                    // the result's payload is passed on without being decoded
+                    WireCodec.setCorrelationId(response, correlationId);
+                    ((BinaryMessageChannel) channel).writeFrame(response, 0, response.length);
+                    return;
+                }
+
+                Message result = WireCodec.decodeMessage(response);
+                if (correlationId == 0)
+                {
+                    // plain object stream clients get the bare result, failures just close the connection
+                    if (result.getType() == JOB_RESULT)
+                    {
+                        ((ObjectMessageChannel) channel).writeObject(result.getContent());
+                    }
+                    return;
+                }
+                result.setCorrelationId(correlationId);
+                channel.write(result);
+            }
+            catch(IOException e)
+            {
+                System.out.println(e);
+            }
+        }
+
+        /**
+         * Writes to the client; the channel serializes responses of concurrent jobs
+         */
+        private void send(Message message) {
+            try
+            {
+                channel.write(message);
+            }
+            catch(IOException e)
+            {
+                System.out.println(e);
+            }
+        }
+
+        private void closeConnection() {
+            try
+            {
+                client.close();
+            }
+            catch(IOException e)
+            {
+            }
         }
     }
 
@@ -0,0 +1,73 @@
+package appserver.server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Class [ToolAffinityPolicy] Sends the jobs of a tool to the same satellites, whose tool cache and JIT are warm
+ * already. Satellites are ranked per tool by weighted rendezvous hashing of tool and satellite name, so a joining
+ * or leaving satellite only moves the tools that rank it first. A job goes to the first satellite in the ranking
+ * whose load stays within <code>LOAD_FACTOR</code> times its weighted share of all outstanding jobs, so a
+ * saturated satellite spills its tool over to the next one in the ranking instead of queueing it.
+ */
+public class ToolAffinityPolicy implements RoutingPolicy {
+
+    // how far above its fair share a satellite may be loaded before its jobs spill over
+    static final double LOAD_FACTOR = 1.25;
+
+    // jobs that do not name a tool
+    private final RoutingPolicy fallback = new LeastOutstandingPolicy();
+
+    @Override
+    public SatelliteLoad select(List<SatelliteLoad> satellites) {
+        return fallback.select(satellites);
+    }
+
+    @Override
+    public SatelliteLoad select(List<SatelliteLoad> satellites, String toolName) {
+        if (toolName == null || satellites.size() == 1) {
+            return fallback.select(satellites);
+        }
+
+        int totalOutstanding = 0;
+        double totalWeight = 0;
+        for (SatelliteLoad load : satellites) {
+            totalOutstanding += load.getOutstanding();
+            totalWeight += load.getWeight();
+        }
+
+        List<SatelliteLoad> ranking = new ArrayList<>(satellites);
+        ranking.sort(Comparator.comparingDouble((SatelliteLoad load) -> score(toolName, load)).reversed());
+        for (SatelliteLoad load : ranking) {
+            // the share of the jobs outstanding once this one is placed
+            double bound = Math.ceil(LOAD_FACTOR * (totalOutstanding + 1) * load.getWeight() / totalWeight);
+            if (load.getOutstanding() + 1 <= bound) {
+                return load;
+            }
+        }
+        return fallback.select(satellites);
+    }
+
+    /**
+     * Weighted rendezvous score, the satellite with the highest score is the tool's first choice
+     */
+    static double score(String toolName, SatelliteLoad load) {
+        long hash = mix(toolName.hashCode() * 0x9E3779B97F4A7C15L + load.getName().hashCode());
+        // uniform in (0, 1)
+        double uniform = ((hash >>> 11) + 0.5) / (1L << 53);
+        return -load.getWeight() / Math.log(uniform);
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads similar names over all bits
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,62 @@
+package appserver.server;
+
+import appserver.job.Job;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Class [ToolCatalog] The tools known to the server. The catalog is pushed to every satellite that
+ * registers, which loads the tools and warms them up before the load manager routes jobs to it.
+ * A tool is kept as a Job: its tool name and its warm-up parameters, null if it needs no warm-up job.
+ */
+public class ToolCatalog {
+
+    private final LinkedHashMap<String, Job> tools = new LinkedHashMap<>();
+
+    public ToolCatalog() {
+    }
+
+    /**
+     * Creates a catalog from the server properties (TOOLS), a comma separated list of tool names,
+     * each optionally followed by ':' and the warm-up parameter, e.g. "appserver.job.impl.Fibonacci:20"
+     */
+    public ToolCatalog(String toolList) {
+        if (toolList == null) {
+            return;
+        }
+        for (String tool : toolList.split(",")) {
+            tool = tool.trim();
+            if (tool.isEmpty()) {
+                continue;
+            }
+            int colon = tool.indexOf(':');
+            if (colon == -1) {
+                register(new Job(tool, null));
+            } else {
+                register(new Job(tool.substring(0, colon).trim(), parseParameter(tool.substring(colon + 1).trim())));
+            }
+        }
+    }
+
+    /**
+     * Adds a tool, or replaces the warm-up parameters of a known one
+     */
+    public synchronized void register(Job tool) {
+        tools.put(tool.getToolName(), tool);
+    }
+
+    public synchronized ArrayList<Job> list() {
+        return new ArrayList<>(tools.values());
+    }
+
+    /**
+     * Warm-up parameters from the properties are integers if they look like one, strings otherwise
+     */
+    static Object parseParameter(String parameter) {
+        try {
+            return Integer.valueOf(parameter);
+        } catch (NumberFormatException e) {
+            return parameter;
+        }
+    }
+}
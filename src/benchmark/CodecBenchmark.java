@@ -0,0 +1,93 @@
+package benchmark;
+
+import appserver.comm.ConnectivityInfo;
+import appserver.comm.Message;
+import appserver.comm.MessageTypes;
+import appserver.comm.WireCodec;
+import appserver.job.Job;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Class [CodecBenchmark] Compares the binary wire codec with Java serialization:
+ * bytes per message and encode/decode time per operation, for the messages the application sends most.
+ * <p>
+ * Run with <code>java benchmark.CodecBenchmark [iterations]</code>
+ */
+public class CodecBenchmark implements MessageTypes {
+
+    static final int WARMUP = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length == 1 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        ConnectivityInfo satelliteInfo = new ConnectivityInfo();
+        satelliteInfo.setName("Earth");
+        satelliteInfo.setHost("127.0.0.1");
+        satelliteInfo.setPort(25176);
+
+        Message[] messages = {
+            new Message(JOB_REQUEST, new Job("appserver.job.impl.PlusOne", 42), 1),
+            new Message(JOB_RESULT, 43, 1),
+            new Message(JOB_REQUEST, new Job("appserver.job.impl.Fibonacci", "some string parameter"), 2),
+            new Message(JOB_RESULT, new byte[1024], 2),
+            new Message(REGISTER_SATELLITE, satelliteInfo, 3)
+        };
+        String[] names = {"PlusOne request", "Integer result", "String request", "byte[1024] result", "Registration"};
+
+        System.out.printf("%-18s %10s %10s %12s %12s %12s %12s%n",
+                "message", "java B", "binary B", "java enc ns", "bin enc ns", "java dec ns", "bin dec ns");
+        for (int i = 0; i < messages.length; i++) {
+            Message message = messages[i];
+
+            byte[] javaBytes = javaEncode(message);
+            byte[] binaryBytes = WireCodec.encodeMessage(message);
+
+            System.out.printf("%-18s %10d %10d %12.0f %12.0f %12.0f %12.0f%n", names[i],
+                    javaBytes.length, binaryBytes.length + 4,
+                    time(iterations, () -> javaEncode(message)),
+                    time(iterations, () -> WireCodec.encodeMessage(message)),
+                    time(iterations, () -> javaDecode(javaBytes)),
+                    time(iterations, () -> WireCodec.decodeMessage(binaryBytes)));
+        }
+        System.out.println("(java: fresh object stream per message as on a one-shot connection; binary: including 4 byte length prefix)");
+    }
+
+    static byte[] javaEncode(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object javaDecode(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    // keeps results alive, so that the JIT cannot drop the operations
+    static volatile Object sink;
+
+    /**
+     * Average time of one operation in nanoseconds, after a warm-up
+     */
+    static double time(int iterations, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            sink = operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = operation.run();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+}
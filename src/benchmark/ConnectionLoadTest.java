@@ -0,0 +1,139 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class [ConnectionLoadTest] Compares the executor modes and the reactor mode of SimpleWebServer under a burst of clients.
+ * For every mode a web server is started in its own JVM, then hit with short-lived connections from
+ * many concurrent clients; connections/sec, peak RSS and thread count of the server process are reported.
+ * RSS and thread figures are read from /proc and only available on Linux.
+ * <p>
+ * Run with <code>java benchmark.ConnectionLoadTest [docRoot] [connections] [clients] [modes ...]</code>
+ * from the directory holding the compiled classes.
+ */
+public class ConnectionLoadTest {
+
+    static int port = 24600;
+
+    public static void main(String[] args) throws Exception {
+        String docRoot = args.length > 0 ? args[0] : "../../docRoot";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        String[] modes = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : new String[]{"thread", "pool", "virtual", "reactor"};
+
+        System.out.printf("%-10s %12s %12s %12s %8s%n", "mode", "conn/s", "failed", "peak RSS kB", "threads");
+        for (String mode : modes) {
+            run(mode, docRoot, connections, clients);
+        }
+    }
+
+    static void run(String mode, String docRoot, int connections, int clients) throws Exception {
+        port++;
+        File properties = File.createTempFile("loadtest", ".properties");
+        properties.deleteOnExit();
+        try (Writer writer = new FileWriter(properties)) {
+            writer.write("PORT " + port + "\nDOC_ROOT " + docRoot + "\nPOOL_SIZE 64\nQUEUE_SIZE 10000\n");
+            // the reactor is an I/O mode of its own, the others are executor modes of the blocking I/O mode
+            writer.write(mode.equals("reactor") ? "IO_MODE reactor\nIO_THREADS 2\n" : "IO_MODE blocking\nEXECUTOR " + mode + "\n");
+        }
+
+        Process server = new ProcessBuilder("java", "-cp", System.getProperty("java.class.path"), "web.SimpleWebServer", properties.getPath())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            waitForPort();
+
+            AtomicInteger remaining = new AtomicInteger(connections);
+            AtomicInteger failed = new AtomicInteger();
+            AtomicInteger peakThreads = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(clients);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++) {
+                new Thread(() -> {
+                    while (remaining.decrementAndGet() >= 0) {
+                        if (!fetch()) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }).start();
+            }
+            // sample the server's thread count while the load is on
+            while (!done.await(50, TimeUnit.MILLISECONDS)) {
+                peakThreads.accumulateAndGet((int) procStatus(server.pid(), "Threads:"), Math::max);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%-10s %12.0f %12d %12d %8d%n", mode, connections / seconds, failed.get(),
+                    procStatus(server.pid(), "VmHWM:"), peakThreads.get());
+        } finally {
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    /**
+     * One short-lived connection: request the index page and read the response to its end
+     */
+    static boolean fetch() {
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write("GET / HTTP/1.0\r\n\r\n".getBytes());
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[4096];
+            int total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+            return total > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static void waitForPort() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                // connected means the server is up, the connection itself is not needed
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("[ConnectionLoadTest] Web server did not come up on port " + port);
+    }
+
+    /**
+     * A numeric field of /proc/[pid]/status, -1 if not available
+     */
+    static long procStatus(long pid, String field) {
+        try {
+            List<String> lines = Files.readAllLines(Paths.get("/proc/" + pid + "/status"));
+            for (String line : lines) {
+                if (line.startsWith(field)) {
+                    return Long.parseLong(line.substring(field.length()).trim().split("\\s+")[0]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,193 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * class [AgingPriorityQueue]
+ * <p>
+ * Queues items by priority class, 0 being the highest, for the job schedulers of the server and the satellites.
+ * Classes are served by strict priority with aging: an item gains one class for every <code>agingMillis</code>
+ * it has waited, so that items of a low class are delayed but never starve. Within a class the item with the
+ * earliest deadline comes first; items without a deadline count as due one aging interval after their arrival,
+ * which keeps them in arrival order among themselves. A class ages by its oldest item, which need not be the one
+ * due first.
+ * <p>
+ * Not thread-safe, the schedulers hold their own lock anyway.
+ */
+public class AgingPriorityQueue<T> {
+
+    // by class, ordered by due time
+    private final List<PriorityQueue<Entry<T>>> classes;
+    // the same items by class, ordered by arrival, for aging; items that left the class are dropped at the head
+    private final List<PriorityQueue<Entry<T>>> arrivals;
+    // 0 for strict priority without aging
+    private final long agingMillis;
+
+    private long sequence = 0;
+    private int size = 0;
+
+    public AgingPriorityQueue(int classCount, long agingMillis) {
+        classes = new ArrayList<>(classCount);
+        arrivals = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            classes.add(new PriorityQueue<>());
+            arrivals.add(new PriorityQueue<>(Comparator.comparingLong((Entry<T> entry) -> entry.arrival).thenComparingLong(entry -> entry.sequence)));
+        }
+        this.agingMillis = agingMillis;
+    }
+
+    /**
+     * Adds an item of the given class, unknown classes are taken as the nearest one; the deadline is in
+     * milliseconds since the epoch, 0 for none
+     */
+    public void add(T item, int priority, long deadline) {
+        add(item, priority, deadline, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds an item that has been waiting since the given time, in milliseconds since the epoch, e.g. one that was
+     * taken from another queue and keeps the classes it gained there
+     */
+    public void add(T item, int priority, long deadline, long arrival) {
+        long due = deadline > 0 ? deadline : agingMillis > 0 ? arrival + agingMillis : Long.MAX_VALUE;
+        Entry<T> entry = new Entry<>(item, arrival, due, sequence++);
+        classes.get(classOf(priority)).add(entry);
+        if (agingMillis > 0) {
+            arrivals.get(classOf(priority)).add(entry);
+        }
+        size++;
+    }
+
+    /**
+     * Takes the next item, null if there is none
+     */
+    public T poll() {
+        return poll(classes.size() - 1);
+    }
+
+    /**
+     * Takes the next item of the classes up to the given one, null if there is none
+     */
+    public T poll(int lowestPriority) {
+        long now = System.currentTimeMillis();
+        int next = -1;
+        long nextRank = 0;
+        for (int i = 0; i <= classOf(lowestPriority); i++) {
+            if (classes.get(i).isEmpty()) {
+                continue;
+            }
+            // the class, less the classes gained by waiting; on a tie the higher class wins
+            long rank = agingMillis > 0 ? i - (now - oldest(i).arrival) / agingMillis : i;
+            if (next < 0 || rank < nextRank) {
+                next = i;
+                nextRank = rank;
+            }
+        }
+        if (next < 0) {
+            return null;
+        }
+        size--;
+        Entry<T> entry = classes.get(next).poll();
+        taken(next, entry);
+        return entry.item;
+    }
+
+    /**
+     * Removes an item, e.g. a cancelled job; false if it is not queued (any more)
+     */
+    public boolean remove(T item) {
+        for (int i = 0; i < classes.size(); i++) {
+            for (Iterator<Entry<T>> iterator = classes.get(i).iterator(); iterator.hasNext();) {
+                Entry<T> entry = iterator.next();
+                if (entry.item == item) {
+                    iterator.remove();
+                    taken(i, entry);
+                    size--;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int size(int priority) {
+        return classes.get(classOf(priority)).size();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * No item of the classes up to the given one waiting
+     */
+    public boolean isEmpty(int lowestPriority) {
+        for (int i = 0; i <= classOf(lowestPriority); i++) {
+            if (!classes.get(i).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The item of a class that is not empty that has been waiting longest
+     */
+    private Entry<T> oldest(int priority) {
+        PriorityQueue<Entry<T>> queue = arrivals.get(priority);
+        while (queue.peek().taken) {
+            queue.poll();
+        }
+        return queue.peek();
+    }
+
+    /**
+     * An entry has left its class; it leaves the arrival order lazily, all at once when the class is empty
+     */
+    private void taken(int priority, Entry<T> entry) {
+        entry.taken = true;
+        if (classes.get(priority).isEmpty()) {
+            arrivals.get(priority).clear();
+        }
+    }
+
+    private int classOf(int priority) {
+        return Math.max(0, Math.min(priority, classes.size() - 1));
+    }
+
+    /**
+     * Class [Entry] A queued item, ordered by due time and then by arrival
+     */
+    private static class Entry<T> implements Comparable<Entry<T>> {
+
+        final T item;
+        final long arrival;
+        final long due;
+        final long sequence;
+        // polled or removed, still in the arrival order until it gets to the head
+        boolean taken = false;
+
+        Entry(T item, long arrival, long due, long sequence) {
+            this.item = item;
+            this.arrival = arrival;
+            this.due = due;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            if (due != other.due) {
+                return Long.compare(due, other.due);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
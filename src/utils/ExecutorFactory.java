@@ -0,0 +1,86 @@
+package utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class [ExecutorFactory]
+ * <p>
+ * Creates the executors that run connection handlers and jobs. The mode is read from a
+ * properties file, using a key prefix so that one file can configure several executors:
+ * <ul>
+ * <li><code>EXECUTOR</code>: <code>thread</code> (a new platform thread per task, the default),
+ * <code>virtual</code> (a virtual thread per task) or <code>pool</code> (a bounded platform thread pool)</li>
+ * <li><code>POOL_SIZE</code>: number of pool threads, defaults to the number of cores</li>
+ * <li><code>QUEUE_SIZE</code>: tasks that may wait for a pool thread, further tasks are rejected</li>
+ * </ul>
+ */
+public class ExecutorFactory {
+
+    public static final String THREAD = "thread";
+    public static final String VIRTUAL = "virtual";
+    public static final String POOL = "pool";
+
+    /**
+     * Creates the executor configured under the given key prefix
+     */
+    public static Executor create(PropertyHandler properties, String prefix, String threadName) {
+        String mode = properties.getProperty(prefix + "EXECUTOR", THREAD).trim().toLowerCase();
+        int poolSize = properties.getIntProperty(prefix + "POOL_SIZE", Runtime.getRuntime().availableProcessors());
+        int queueSize = properties.getIntProperty(prefix + "QUEUE_SIZE", 1000);
+        return create(mode, poolSize, queueSize, threadName);
+    }
+
+    public static Executor create(String mode, int poolSize, int queueSize, String threadName) {
+        switch (mode) {
+            case VIRTUAL:
+                Executor virtual = virtualThreadExecutor();
+                if (virtual != null) {
+                    System.out.println("[ExecutorFactory] " + threadName + ": virtual thread per task");
+                    return virtual;
+                }
+                System.err.println("[ExecutorFactory] " + threadName + ": virtual threads need Java 21, using a platform thread per task");
+                return threadPerTask(threadName);
+
+            case POOL:
+                System.out.println("[ExecutorFactory] " + threadName + ": pool of " + poolSize + " threads, queue of " + queueSize);
+                // rejects tasks when all threads are busy and the queue is full, callers shed the load
+                return new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>(queueSize), namedThreads(threadName));
+
+            default:
+                return threadPerTask(threadName);
+        }
+    }
+
+    /**
+     * A new platform thread for every task, the original behavior
+     */
+    static Executor threadPerTask(String threadName) {
+        ThreadFactory threads = namedThreads(threadName);
+        return task -> threads.newThread(task).start();
+    }
+
+    /**
+     * <code>Executors.newVirtualThreadPerTaskExecutor()</code> if the runtime has it, null otherwise
+     */
+    static Executor virtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static ThreadFactory namedThreads(String threadName) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> new Thread(task, threadName + "-" + count.incrementAndGet());
+    }
+}
@@ -0,0 +1,49 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * class [LatencyWindow]
+ * <p>
+ * The most recent latencies of something, e.g. the jobs of a tool, to take percentiles of. Thread-safe.
+ */
+public class LatencyWindow {
+
+    public static final int SIZE = 256;
+
+    // latencies needed before there are percentiles
+    private final int minSamples;
+
+    // guarded by this
+    private final long[] latencies = new long[SIZE];
+    private int count = 0;
+    // percentiles are computed again after some more samples only
+    private long[] sorted = null;
+
+    public LatencyWindow(int minSamples) {
+        this.minSamples = Math.max(1, minSamples);
+    }
+
+    public synchronized void record(long latencyNanos) {
+        latencies[count % SIZE] = latencyNanos;
+        count++;
+        if (count % 16 == 0 || count < 16) {
+            sorted = null;
+        }
+    }
+
+    /**
+     * The given percentile of the recent latencies, 0 while there are too few of them
+     */
+    public synchronized long percentile(double percentile) {
+        if (count < minSamples) {
+            return 0;
+        }
+        if (sorted == null) {
+            sorted = Arrays.copyOf(latencies, Math.min(count, SIZE));
+            Arrays.sort(sorted);
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -51,6 +51,17 @@ public class PropertyHandler extends Properties {
         return value;
     }
 
+    /**
+     * Reads an integer property, falls back to the given default if the key is missing
+     */
+    public int getIntProperty(String key, int defaultValue) {
+        String value = getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
     /**
      * Looks for a valid properties file ...
      */
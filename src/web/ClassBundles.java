@@ -0,0 +1,122 @@
+package web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+
+/**
+ * Class [ClassBundles]
+ * <p>
+ * Provides the virtual file <code>bundle.jar</code> of a directory: a jar of all class files in it,
+ * so that a class loader gets all classes of a package with one request. A bundle is built when
+ * it is requested first and built again when a class file in the directory was added, removed or changed.
+ */
+public class ClassBundles {
+
+    public static final String BUNDLE_NAME = "bundle.jar";
+
+    // by directory, relative to the document root
+    private final ConcurrentHashMap<String, Bundle> bundles = new ConcurrentHashMap<>();
+
+    /**
+     * Is the path the one of a bundle
+     */
+    public static boolean isBundle(String path) {
+        return path.endsWith("/" + BUNDLE_NAME);
+    }
+
+    /**
+     * The current bundle of a directory, the path being the one of the bundle relative to the document root
+     */
+    public Bundle get(File documentRoot, String path) throws IOException {
+        String directoryPath = path.substring(0, path.length() - BUNDLE_NAME.length());
+        while (directoryPath.startsWith("/")) {
+            directoryPath = directoryPath.substring(1);
+        }
+        File directory = new File(documentRoot, directoryPath);
+        File[] classFiles = directory.listFiles((dir, name) -> name.endsWith(".class"));
+        if (classFiles == null || classFiles.length == 0) {
+            throw new FileNotFoundException("No class files in " + directory);
+        }
+        Arrays.sort(classFiles);
+
+        // the version of the bundle is the one of its class files
+        StringBuilder signature = new StringBuilder();
+        long lastModified = 0;
+        for (File classFile : classFiles) {
+            signature.append(classFile.getName()).append(' ').append(classFile.length()).append(' ')
+                    .append(classFile.lastModified()).append('\n');
+            lastModified = Math.max(lastModified, classFile.lastModified());
+        }
+
+        Bundle bundle = bundles.get(directoryPath);
+        if (bundle != null && bundle.signature.equals(signature.toString())) {
+            return bundle;
+        }
+        bundle = new Bundle(signature.toString(), lastModified, build(directoryPath, classFiles));
+        bundles.put(directoryPath, bundle);
+        return bundle;
+    }
+
+    private static byte[] build(String directoryPath, File[] classFiles) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes, manifest)) {
+            for (File classFile : classFiles) {
+                JarEntry entry = new JarEntry(directoryPath + classFile.getName());
+                entry.setTime(classFile.lastModified());
+                jar.putNextEntry(entry);
+                jar.write(Files.readAllBytes(classFile.toPath()));
+                jar.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Class [Bundle] One version of the bundle of a directory
+     */
+    public static class Bundle {
+
+        final String signature;
+        final long lastModified;
+        final String eTag;
+        private final ByteBuffer content;
+
+        Bundle(String signature, long lastModified, byte[] content) {
+            this.signature = signature;
+            this.lastModified = lastModified;
+            CRC32 crc = new CRC32();
+            crc.update(signature.getBytes());
+            this.eTag = "\"b" + Long.toHexString(content.length) + "-" + Long.toHexString(crc.getValue()) + "\"";
+            this.content = ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * The jar, with a position of its own for each response
+         */
+        public ByteBuffer getContent() {
+            return content.duplicate();
+        }
+    }
+}
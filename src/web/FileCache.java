@@ -0,0 +1,146 @@
+package web;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class [FileCache]
+ * <p>
+ * Keeps the content of small files in direct buffers, least recently used files are dropped
+ * once the cache holds more than its maximum size. A file that changed on disk, by modification
+ * time or length, is read again. Files larger than the maximum file size are not cached, they are
+ * sent from disk with <code>FileChannel.transferTo()</code>.
+ */
+public class FileCache {
+
+    private final long maxBytes;
+    private final long maxFileBytes;
+
+    // in access order, the eldest entry is the least recently used one
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes = 0;
+
+    public FileCache(long maxBytes, long maxFileBytes) {
+        this.maxBytes = maxBytes;
+        this.maxFileBytes = Math.min(maxFileBytes, maxBytes);
+    }
+
+    /**
+     * Provides the current version of a file; throws <code>FileNotFoundException</code> if there is no such regular file
+     */
+    public Entry get(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new FileNotFoundException(path + " is not a file");
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long length = attributes.size();
+
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null) {
+                if (entry.lastModified == lastModified && entry.length == length) {
+                    return entry;
+                }
+                // changed on disk
+                remove(path);
+            }
+        }
+
+        if (length > maxFileBytes) {
+            return new Entry(path, lastModified, length, null);
+        }
+
+        // read outside the lock, a concurrent request for the same file may read it as well
+        Entry entry = new Entry(path, lastModified, length, read(path, length));
+        synchronized (this) {
+            Entry previous = entries.put(path, entry);
+            if (previous != null) {
+                cachedBytes -= previous.length;
+            }
+            cachedBytes += length;
+
+            Iterator<Map.Entry<Path, Entry>> eldest = entries.entrySet().iterator();
+            while (cachedBytes > maxBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+        return entry;
+    }
+
+    private void remove(Path path) {
+        Entry entry = entries.remove(path);
+        if (entry != null) {
+            cachedBytes -= entry.length;
+        }
+    }
+
+    private static ByteBuffer read(Path path, long length) throws IOException {
+        ByteBuffer content = ByteBuffer.allocateDirect((int) length);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            // a single read may return less than asked for
+            while (content.hasRemaining()) {
+                if (file.read(content) == -1) {
+                    throw new IOException("File " + path + " truncated while reading");
+                }
+            }
+        }
+        content.flip();
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Class [Entry] One version of a file, with its content if the file is cached
+     */
+    public static class Entry {
+
+        final Path path;
+        final long lastModified;
+        final long length;
+        // changes with every version of the file
+        final String eTag;
+        private final ByteBuffer content;
+
+        Entry(Path path, long lastModified, long length, ByteBuffer content) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+            this.content = content;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * Sets the content as body of the response, from the cache or from disk
+         */
+        void setBodyOf(HttpResponse response) throws IOException {
+            if (content != null) {
+                // each response has its own position
+                response.setBody(content.duplicate());
+            } else {
+                response.setBody(new FileRegion(path, length));
+            }
+        }
+    }
+}
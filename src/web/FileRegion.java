@@ -0,0 +1,56 @@
+package web;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class [FileRegion]
+ * <p>
+ * The body of a response that is sent straight from the file with <code>FileChannel.transferTo()</code>,
+ * so that its bytes never pass through the Java heap. Owns an open file channel until it is closed.
+ */
+public class FileRegion {
+
+    private final FileChannel file;
+    private long position = 0;
+    private final long end;
+
+    FileRegion(Path path, long length) throws IOException {
+        file = FileChannel.open(path, StandardOpenOption.READ);
+        end = length;
+    }
+
+    public long length() {
+        return end;
+    }
+
+    /**
+     * Transfers as much as the target takes; returns true when the whole region has been sent
+     */
+    boolean transferTo(WritableByteChannel target) throws IOException {
+        while (position < end) {
+            long transferred = file.transferTo(position, end - position, target);
+            if (transferred == 0) {
+                if (position >= file.size()) {
+                    // the content length has been promised already, the connection cannot be used any more
+                    throw new EOFException("File truncated while sending");
+                }
+                // non-blocking target is full
+                return false;
+            }
+            position += transferred;
+        }
+        return true;
+    }
+
+    void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+        }
+    }
+}
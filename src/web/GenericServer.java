@@ -2,7 +2,8 @@ package web;
 
 import java.io.*;
 import java.net.*;
-import java.util.Properties;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import utils.PropertyHandler;
 
 /**
@@ -11,14 +12,25 @@ import utils.PropertyHandler;
  * An abstract template-class for socket servers.. Concrete servers have to be
  * derived from this class. To do this, the method
  * <code>processConnection()</code>. has to be overridden
+ * <p>
+ * Alternatively, with <code>IO_MODE reactor</code> in the properties, connections are served
+ * by <code>IO_THREADS</code> non-blocking reactor threads. Concrete servers provide the
+ * <code>NonBlockingHandler</code> of such a connection with <code>createHandler()</code>.
  *
  * @author Prof. Dr.-Ing. Wolf-Dieter Otte
  * @version Feb. 2000
  */
 public abstract class GenericServer implements Runnable {
 
-    static ServerSocket serverSocket;
-    static int port;
+    public static final String BLOCKING = "blocking";
+    public static final String REACTOR = "reactor";
+
+    ServerSocket serverSocket;
+    int port;
+    String ioMode = BLOCKING;
+    int ioThreads = 1;
+    // idle keep-alive connections are closed after this time
+    int idleTimeoutMillis = 15000;
 
     protected Socket socket;
 
@@ -27,16 +39,17 @@ public abstract class GenericServer implements Runnable {
      */
     public GenericServer(String serverPropertiesFile) {
         try {
-            // init static variables with properties read 
-            Properties properties;
+            // init variables with properties read 
+            PropertyHandler properties;
             properties = new PropertyHandler(serverPropertiesFile);
             port = Integer.parseInt(properties.getProperty("PORT"));
+            ioMode = properties.getProperty("IO_MODE", BLOCKING).trim().toLowerCase();
+            ioThreads = properties.getIntProperty("IO_THREADS", Runtime.getRuntime().availableProcessors());
+            idleTimeoutMillis = properties.getIntProperty("IDLE_TIMEOUT", idleTimeoutMillis);
         } catch (Exception e) {
             System.err.println("[GenericServer.GenericServer] Properties file " + serverPropertiesFile + " not found, exiting ...");
             System.exit(1);
         }
-
-        this.port = port;
     }
 
     /**
@@ -44,8 +57,16 @@ public abstract class GenericServer implements Runnable {
      * <code>Runnable</code>
      */
     public void run() {
+        if (ioMode.equals(REACTOR)) {
+            runReactors();
+            return;
+        }
+
         try {
-            serverSocket = new ServerSocket(port);
+            // opened as channel, so that the sockets of connections have a channel for transferTo()
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverSocket = serverChannel.socket();
 
             while (true) {
                 System.out.println("[GenericServer.run] Waiting for connections on Port #" + port);
@@ -60,10 +81,47 @@ public abstract class GenericServer implements Runnable {
         }
     }
 
+    /**
+     * Reactor mode: this thread accepts connections and hands them to the reactor threads in turn,
+     * each of which serves all of its connections with one selector
+     */
+    private void runReactors() {
+        try {
+            Reactor[] reactors = new Reactor[Math.max(1, ioThreads)];
+            for (int i = 0; i < reactors.length; i++) {
+                reactors[i] = new Reactor(this);
+                Thread reactorThread = new Thread(reactors[i], "Reactor-" + i);
+                reactorThread.start();
+            }
+
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverSocket = serverChannel.socket();
+            System.out.println("[GenericServer.run] Waiting for connections on Port #" + port + " with " + reactors.length + " reactor threads");
+
+            int next = 0;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+            }
+
+        } catch (IOException ioe) {
+            System.err.println("IOException" + ioe.getMessage());
+            ioe.printStackTrace();
+        }
+    }
+
     /**
      * The method <code>processConnection()</code> contains the "Intelligence"
      * of servers, i.e. his application specific functionality. This method has
      * to be overridden by concrete servers.
      */
     protected abstract void processConnection(Socket socket);
+
+    /**
+     * The method <code>createHandler()</code> provides the handler of one connection in reactor mode.
+     * This method has to be overridden by concrete servers.
+     */
+    protected abstract NonBlockingHandler createHandler();
 }
@@ -0,0 +1,69 @@
+package web;
+
+import java.util.HashMap;
+import java.util.StringTokenizer;
+
+/**
+ * Class [HttpRequest]
+ * <p>
+ * The parsed head of an HTTP request: request line and header fields.
+ * Header names are kept in lower case.
+ */
+public class HttpRequest {
+
+    String method;
+    String path;
+    String version = "";
+    HashMap<String, String> headers = new HashMap<>();
+
+    /**
+     * Parses the request line and the header lines, the empty line ending the head is optional
+     */
+    public static HttpRequest parse(String head) {
+        HttpRequest request = new HttpRequest();
+        String[] lines = head.split("\r?\n");
+
+        StringTokenizer tokenizer = new StringTokenizer(lines[0]);
+        request.method = tokenizer.hasMoreTokens() ? tokenizer.nextToken() : "";
+        request.path = tokenizer.hasMoreTokens() ? tokenizer.nextToken() : "/";
+        if (tokenizer.hasMoreTokens()) {
+            request.version = tokenizer.nextToken();
+        }
+
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                request.headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+            }
+        }
+        return request;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    /**
+     * HTTP/1.1 connections stay open unless the client asks to close them,
+     * HTTP/1.0 connections only stay open if the client asks for keep-alive
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+        if (version.equals("HTTP/1.1")) {
+            return connection == null || !connection.equalsIgnoreCase("close");
+        }
+        return connection != null && connection.equalsIgnoreCase("keep-alive");
+    }
+}
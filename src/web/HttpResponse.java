@@ -0,0 +1,122 @@
+package web;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Class [HttpResponse]
+ * <p>
+ * A response of the web server, i.e. status, header fields and body. Requests without an
+ * HTTP version get the body only, without a MIME header. The body is a buffer, or a file region
+ * for files that are sent from disk.
+ */
+public class HttpResponse {
+
+    static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+
+    // the value of the Date header, formatted at most once per second
+    private static volatile FormattedDate currentDate = new FormattedDate(-1, "");
+
+    String version = "HTTP/1.0";
+    int status;
+    String reason;
+    LinkedHashMap<String, String> headers = new LinkedHashMap<>();
+    ByteBuffer body = ByteBuffer.allocate(0);
+    FileRegion bodyFile = null;
+    boolean sendHeader = true;
+
+    public HttpResponse(int status, String reason) {
+        this.status = status;
+        this.reason = reason;
+    }
+
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    public void setBody(byte[] body) {
+        setBody(ByteBuffer.wrap(body));
+    }
+
+    public void setBody(ByteBuffer body) {
+        this.body = body;
+        this.bodyFile = null;
+    }
+
+    public void setBody(FileRegion bodyFile) {
+        this.body = null;
+        this.bodyFile = bodyFile;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * The body if it is held in a buffer, null if it is a file region
+     */
+    public ByteBuffer getBody() {
+        return body;
+    }
+
+    /**
+     * The body if it is sent from a file, null otherwise
+     */
+    public FileRegion getBodyFile() {
+        return bodyFile;
+    }
+
+    public long getContentLength() {
+        return bodyFile != null ? bodyFile.length() : body.remaining();
+    }
+
+    /**
+     * Status line and header fields, terminated by the empty line; empty if no header is to be sent
+     */
+    public byte[] headerBytes() {
+        if (!sendHeader) {
+            return new byte[0];
+        }
+        StringBuilder header = new StringBuilder();
+        header.append(version).append(' ').append(status).append(' ').append(reason).append("\r\n");
+        for (Map.Entry<String, String> field : headers.entrySet()) {
+            header.append(field.getKey()).append(": ").append(field.getValue()).append("\r\n");
+        }
+        header.append("\r\n");
+        return header.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The current time as HTTP date, e.g. "Sun, 06 Nov 1994 08:49:37 GMT"
+     */
+    public static String currentDate() {
+        long second = System.currentTimeMillis() / 1000;
+        FormattedDate date = currentDate;
+        if (date.second != second) {
+            date = new FormattedDate(second, formatDate(second * 1000));
+            currentDate = date;
+        }
+        return date.text;
+    }
+
+    public static String formatDate(long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC));
+    }
+
+    private static class FormattedDate {
+
+        final long second;
+        final String text;
+
+        FormattedDate(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
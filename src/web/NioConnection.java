@@ -0,0 +1,171 @@
+package web;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Class [NioConnection]
+ * <p>
+ * A non-blocking connection served by a reactor thread. Buffers incoming bytes for its handler and
+ * queues outgoing buffers and file regions until the socket takes them. Only used from its reactor thread.
+ */
+public class NioConnection {
+
+    // requests larger than this are refused
+    static final int MAX_INPUT = 64 * 1024;
+
+    final SocketChannel channel;
+    final SelectionKey key;
+    final NonBlockingHandler handler;
+
+    private ByteBuffer input = ByteBuffer.allocate(4096);
+    // ByteBuffers and FileRegions, in sending order
+    private final ArrayDeque<Object> output = new ArrayDeque<>();
+    private boolean closeWhenFlushed = false;
+    // time of the last read or write, for closing idle connections
+    long lastActivity = System.currentTimeMillis();
+
+    NioConnection(SocketChannel channel, SelectionKey key, NonBlockingHandler handler) {
+        this.channel = channel;
+        this.key = key;
+        this.handler = handler;
+    }
+
+    /**
+     * Queues buffers for sending; whatever the socket does not take right away is sent when it becomes writable
+     */
+    public void send(ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            output.add(buffer);
+        }
+        flush();
+    }
+
+    /**
+     * Queues a file region for sending with <code>transferTo()</code>; the connection closes it when it is sent
+     */
+    public void send(FileRegion region) throws IOException {
+        output.add(region);
+        flush();
+    }
+
+    /**
+     * Closes the connection as soon as everything queued has been sent
+     */
+    public void closeWhenFlushed() throws IOException {
+        closeWhenFlushed = true;
+        flush();
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Idle means nothing is waiting to be sent and nothing has arrived for the given time
+     */
+    boolean isIdle(long now, long idleTimeoutMillis) {
+        return output.isEmpty() && now - lastActivity > idleTimeoutMillis;
+    }
+
+    /**
+     * The socket is readable: read what is there and let the handler process it
+     */
+    void read() throws IOException {
+        if (!input.hasRemaining()) {
+            if (input.capacity() >= MAX_INPUT) {
+                close();
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+            input.flip();
+            larger.put(input);
+            input = larger;
+        }
+
+        int bytesRead = channel.read(input);
+        if (bytesRead == -1) {
+            close();
+            return;
+        }
+        lastActivity = System.currentTimeMillis();
+
+        input.flip();
+        handler.dataReceived(input, this);
+        input.compact();
+    }
+
+    /**
+     * Writes queued buffers as far as the socket takes them, registers for writability otherwise
+     */
+    void flush() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        while (!output.isEmpty()) {
+            boolean sent;
+            if (output.peek() instanceof FileRegion) {
+                FileRegion region = (FileRegion) output.peek();
+                sent = region.transferTo(channel);
+                if (sent) {
+                    region.close();
+                    output.poll();
+                }
+            } else {
+                // consecutive buffers, e.g. header and body, go out with one gathering write
+                ByteBuffer[] buffers = leadingBuffers();
+                channel.write(buffers);
+                sent = !buffers[buffers.length - 1].hasRemaining();
+                for (int i = 0; i < buffers.length && !buffers[i].hasRemaining(); i++) {
+                    output.poll();
+                }
+            }
+            lastActivity = System.currentTimeMillis();
+            if (!sent) {
+                // socket buffer full, continue when it is writable again
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+        if (closeWhenFlushed) {
+            close();
+        }
+    }
+
+    private ByteBuffer[] leadingBuffers() {
+        int count = 0;
+        for (Object next : output) {
+            if (!(next instanceof ByteBuffer)) {
+                break;
+            }
+            count++;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        Iterator<Object> next = output.iterator();
+        for (int i = 0; i < count; i++) {
+            buffers[i] = (ByteBuffer) next.next();
+        }
+        return buffers;
+    }
+
+    void close() {
+        // release the files of regions not sent
+        for (Object next : output) {
+            if (next instanceof FileRegion) {
+                ((FileRegion) next).close();
+            }
+        }
+        output.clear();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+        }
+    }
+}
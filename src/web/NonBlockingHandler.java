@@ -0,0 +1,20 @@
+package web;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface [NonBlockingHandler]
+ * <p>
+ * The application specific part of a server in reactor mode. There is one handler per connection,
+ * it is always called on the connection's reactor thread and must not block on the network.
+ */
+public interface NonBlockingHandler {
+
+    /**
+     * Called when bytes arrived. The buffer is in read mode and holds everything not consumed so far;
+     * the handler consumes complete requests and leaves a partial one in the buffer for the next call.
+     * Responses are queued with <code>connection.send()</code>.
+     */
+    public void dataReceived(ByteBuffer input, NioConnection connection) throws IOException;
+}
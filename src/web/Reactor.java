@@ -0,0 +1,106 @@
+package web;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Class [Reactor]
+ * <p>
+ * One I/O thread of a server in reactor mode. Multiplexes all of its connections over one selector
+ * and calls their handlers when data arrives.
+ */
+class Reactor implements Runnable {
+
+    final GenericServer server;
+    final Selector selector;
+
+    // connections accepted by the acceptor thread, waiting to be registered with the selector
+    private final ConcurrentLinkedQueue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+
+    Reactor(GenericServer server) throws IOException {
+        this.server = server;
+        selector = Selector.open();
+    }
+
+    /**
+     * Hands over a new connection, called by the acceptor thread
+     */
+    void register(SocketChannel channel) {
+        newChannels.add(channel);
+        selector.wakeup();
+    }
+
+    public void run() {
+        long lastIdleCheck = System.currentTimeMillis();
+        while (true) {
+            try {
+                selector.select(1000);
+                registerNewChannels();
+
+                // once per second, close keep-alive connections that have been idle too long
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= 1000) {
+                    closeIdleConnections(now);
+                    lastIdleCheck = now;
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                // the reactor serves all of its connections, it must keep running
+                System.err.println("[Reactor.run] " + e);
+            }
+        }
+    }
+
+    private void registerNewChannels() {
+        SocketChannel channel;
+        while ((channel = newChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new NioConnection(channel, key, server.createHandler()));
+            } catch (IOException | RuntimeException failure) {
+                // e.g. the server cannot create a handler: only this connection is given up
+                System.err.println("[Reactor.registerNewChannels] " + failure);
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private void closeIdleConnections(long now) {
+        for (SelectionKey key : selector.keys()) {
+            NioConnection connection = (NioConnection) key.attachment();
+            if (connection != null && connection.isIdle(now, server.idleTimeoutMillis)) {
+                connection.close();
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.read();
+            }
+        } catch (IOException | RuntimeException e) {
+            // a broken connection must not take the reactor down
+            connection.close();
+        }
+    }
+}
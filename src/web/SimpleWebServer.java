@@ -1,22 +1,30 @@
 package web;
 
-import appserver.client.PlusOneClient;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintStream;
 import java.net.Socket;
-import java.util.Date;
-import java.util.Properties;
-import java.util.StringTokenizer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import utils.ExecutorFactory;
 import utils.PropertyHandler;
 
 /**
  * Class [SimpleWebServer]
  *
  * A simple web server, which only implements the GET-method.
+ * Runs in blocking mode with a SocketThread per connection, or in reactor mode with an HttpHandler per connection.
  *
  * @author Prof. Dr.-Ing. Wolf-Dieter Otte
  */
@@ -24,6 +32,12 @@ public class SimpleWebServer extends GenericServer {
 
     static String documentRoot;
     static String indexfile = "index.html";
+    // runs the SocketThreads, configured by EXECUTOR, POOL_SIZE and QUEUE_SIZE
+    static Executor connectionExecutor;
+    // small files are served from memory, configured by FILE_CACHE_SIZE and FILE_CACHE_MAX_FILE_SIZE
+    static FileCache fileCache;
+    // the virtual bundle.jar of directories with class files
+    static ClassBundles classBundles = new ClassBundles();
 
     /**
      * The constructor
@@ -33,9 +47,12 @@ public class SimpleWebServer extends GenericServer {
 
         try {
             // init static variables with properties read 
-            Properties properties;
+            PropertyHandler properties;
             properties = new PropertyHandler(webServerPropertiesFile);
             documentRoot = properties.getProperty("DOC_ROOT");
+            connectionExecutor = ExecutorFactory.create(properties, "", "SocketThread");
+            fileCache = new FileCache(properties.getIntProperty("FILE_CACHE_SIZE", 16 * 1024 * 1024),
+                    properties.getIntProperty("FILE_CACHE_MAX_FILE_SIZE", 256 * 1024));
 
         } catch (Exception e) {
             System.err.println("Properties file " + webServerPropertiesFile + " not found, exiting ...");
@@ -48,27 +65,178 @@ public class SimpleWebServer extends GenericServer {
      * of the web server.
      */
     protected void processConnection(Socket socket) {
-        (new SocketThread(socket)).start();
+        try {
+            connectionExecutor.execute(new SocketThread(socket));
+        } catch (RejectedExecutionException e) {
+            // all pool threads busy and the queue is full
+            System.err.println("[SimpleWebServer] Too many connections, closing " + socket.getRemoteSocketAddress());
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+            }
+        }
+    }
+
+    /**
+     * The method <code>createHandler()</code> provides the handler of a connection in reactor mode
+     */
+    protected NonBlockingHandler createHandler() {
+        return new HttpHandler();
+    }
+
+    /**
+     * The method <code>respond()</code> answers one request, it is shared by both I/O modes
+     */
+    HttpResponse respond(HttpRequest request) {
+        HttpResponse response;
+        String fileString = request.getPath();
+
+        if (request.getMethod().equals("GET")) {
+            if (fileString.endsWith("/")) {
+                fileString += indexfile;
+            }
+
+            File fileToServe = new File(SimpleWebServer.documentRoot, fileString);
+            try {
+                System.err.println("File to serve: " + "\"" + fileString + "\"");
+                FileCache.Entry file = null;
+                ClassBundles.Bundle bundle = null;
+                String eTag;
+                long lastModified;
+                if (ClassBundles.isBundle(fileString) && !fileToServe.exists()) {
+                    // the class files of the directory as one jar
+                    bundle = classBundles.get(new File(SimpleWebServer.documentRoot), fileString);
+                    eTag = bundle.getETag();
+                    lastModified = bundle.getLastModified();
+                } else {
+                    file = fileCache.get(fileToServe.toPath());
+                    eTag = file.getETag();
+                    lastModified = file.getLastModified();
+                }
+
+                if (isNotModified(request, eTag, lastModified)) {
+                    // the client's copy is current
+                    response = new HttpResponse(304, "Not Modified");
+                    response.setHeader("Date", HttpResponse.currentDate());
+                    response.setHeader("Server", "WebServer Version Feb 2000");
+                    System.err.println("File: " + fileToServe + " not modified\n");
+                } else {
+                    response = new HttpResponse(200, "OK");
+                    response.setHeader("Date", HttpResponse.currentDate());
+                    response.setHeader("Server", "WebServer Version Feb 2000");
+                    response.setHeader("Content-type", guessContentTypeFromName(fileString));
+                    if (bundle != null) {
+                        response.setBody(bundle.getContent());
+                    } else {
+                        file.setBodyOf(response);
+                    }
+                    System.err.println("File: " + fileToServe + " sent\n");
+                }
+                response.setHeader("Last-Modified", HttpResponse.formatDate(lastModified));
+                response.setHeader("ETag", eTag);
+
+            } catch (IOException e) {
+                // Cannot find the file
+                response = errorResponse(404, "File Not Found");
+                System.err.println("File: " + fileToServe + " not found\n");
+            }
+        } else {
+            // Method doesn't equal "GET"
+            response = errorResponse(501, "Not Implemented");
+            System.err.println("Method: " + request.getMethod() + " is not supported\n");
+        }
+
+        // every response is framed by its length, so that the connection can carry further requests
+        if (response.getStatus() != 304) {
+            response.setHeader("Content-length", String.valueOf(response.getContentLength()));
+        }
+        if (request.getVersion().equals("HTTP/1.1")) {
+            response.version = "HTTP/1.1";
+        }
+        response.setHeader("Connection", request.isKeepAlive() ? "keep-alive" : "close");
+
+        // no MIME header for requests without HTTP version
+        response.sendHeader = request.getVersion().startsWith("HTTP/");
+        return response;
     }
 
     /**
-     * Inner Class [SocketThread] This thread processes a client (web browser)
-     * request. In the meantime the web server can accept other clients.
+     * Evaluates the validators of a conditional request; If-None-Match takes precedence over If-Modified-Since
      */
-    class SocketThread extends Thread {
+    static boolean isNotModified(HttpRequest request, String currentETag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String eTag : ifNoneMatch.split(",")) {
+                eTag = eTag.trim();
+                if (eTag.startsWith("W/")) {
+                    eTag = eTag.substring(2);
+                }
+                if (eTag.equals("*") || eTag.equals(currentETag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, HttpResponse.HTTP_DATE.withZone(ZoneOffset.UTC)).toInstant().toEpochMilli();
+                // HTTP dates have a resolution of one second
+                return lastModified / 1000 <= since / 1000;
+            } catch (DateTimeParseException e) {
+                // an invalid date is ignored
+            }
+        }
+        return false;
+    }
+
+    private HttpResponse errorResponse(int status, String reason) {
+        HttpResponse response = new HttpResponse(status, reason);
+        response.setHeader("Date", HttpResponse.currentDate());
+        response.setHeader("Server", "MyWebServer Version Feb 2000");
+        response.setHeader("Content-type", "text/html");
+        response.setBody(("<HTML><HEAD><TITLE>" + reason + "</TITLE></HEAD>\n"
+                + "<BODY><H1>HTTP Error " + status + ": " + reason + "</H1></BODY></HTML>\n").getBytes(StandardCharsets.ISO_8859_1));
+        return response;
+    }
+
+    /**
+     * The method <code>guessContentTypeFromName()</code> returns the
+     * MIME-type of a file, which is guessed from the file's extention.
+     */
+    public static String guessContentTypeFromName(String name) {
+        if (name.endsWith(".html") || name.endsWith(".htm")) {
+            return "text/html";
+        } else if (name.endsWith(".txt") || name.endsWith(".java")) {
+            return "text/plain";
+        } else if (name.endsWith(".gif")) {
+            return "image/gif";
+        } else if (name.endsWith(".class")) {
+            return "application/octet-stream";
+        } else if (name.endsWith(".jar")) {
+            return "application/java-archive";
+        } else if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return "image/jpeg";
+        } else {
+            return "text/plain";
+        }
+    }
+
+    /**
+     * Inner Class [SocketThread] This thread processes the requests of a client (web browser)
+     * on one connection. In the meantime the web server can accept other clients.
+     */
+    class SocketThread implements Runnable {
 
         Socket socket = null;
 
         BufferedReader readFromNet = null;
-        PrintStream writeToNet = null;
+        WritableByteChannel writeToNet = null;
+        // responses of pipelined requests, written together
+        List<ByteBuffer> pending = new ArrayList<>();
 
         String inputLine;
-        String httpMethod;
-        StringTokenizer tokenizer;
-        String fileString;
-        String version;
-        String contentType;
-        File fileToServe;
 
         /**
          * The Constructor
@@ -82,86 +250,55 @@ public class SimpleWebServer extends GenericServer {
          */
         public void run() {
             try {
-                writeToNet = new PrintStream(socket.getOutputStream());
-                readFromNet = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                inputLine = readFromNet.readLine();
-                tokenizer = new StringTokenizer(inputLine);
-                httpMethod = tokenizer.nextToken();
-
-                if (httpMethod.equals("GET")) {
-                    fileString = tokenizer.nextToken();
+                // sockets accepted by GenericServer have a channel, bodies are written without copying
+                writeToNet = socket.getChannel() != null ? socket.getChannel() : Channels.newChannel(socket.getOutputStream());
+                readFromNet = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                // idle keep-alive connections do not hold on to their thread forever
+                socket.setSoTimeout(idleTimeoutMillis);
 
-                    if (fileString.endsWith("/")) {
-                        fileString += indexfile;
-                    }
-                    contentType = guessContentTypeFromName(fileString);
-
-                    if (tokenizer.hasMoreTokens()) {
-                        version = tokenizer.nextToken();
-                    }
-
-                    // Skip the rest
+                // serve requests until the client or a request without keep-alive ends the connection
+                boolean keepAlive = true;
+                while (keepAlive) {
+                    // read the request line and the header lines up to the empty line
+                    StringBuilder head = new StringBuilder();
                     while ((inputLine = readFromNet.readLine()) != null) {
                         if (inputLine.trim().equals("")) {
+                            if (head.length() == 0) {
+                                // tolerate empty lines between requests
+                                continue;
+                            }
                             break;
                         }
+                        head.append(inputLine).append("\n");
+                    }
+                    if (head.length() == 0) {
+                        break;
                     }
 
-                    try {
-                        System.err.println("File to serve: " + "\"" + fileString + "\"");
-                        fileToServe = new File(SimpleWebServer.documentRoot, fileString);
-                        FileInputStream fis = new FileInputStream(fileToServe);
-                        byte[] theData = new byte[(int) fileToServe.length()];
-
-                        fis.read(theData);
-                        fis.close();
-
-                        if (version.startsWith("HTTP/")) {
-                            // Send a MIME header
-                            writeToNet.print("HTTP/1.0 200 OK\r\n");
-                            writeToNet.print("Date: " + new Date() + "\r\n");
-                            writeToNet.print("Server: WebServer Version Feb 2000\r\n");
-                            writeToNet.print("Content-length: " + theData.length + "\r\n");
-                            writeToNet.print("Content-type: " + contentType + "\r\n\r\n");
-                        }
-
-                        // Send the file
-                        writeToNet.write(theData);
-                        writeToNet.close();
-                        System.err.println("File: " + fileToServe + " sent\n");
-
-                    } catch (IOException e) {
-                        // Cannot find the file
-                        if (version.startsWith("HTTP/")) {
-                            // send a MIME header
-                            writeToNet.print("HTTP/1.0 404 File Not Found\r\n");
-                            writeToNet.print("Date: " + new Date() + "\r\n");
-                            writeToNet.print("Server: MyWebServer Version Feb 2000\r\n");
-                            writeToNet.print("Content-type: text/html" + "\r\n\r\n");
+                    HttpRequest request = HttpRequest.parse(head.toString());
+                    HttpResponse response = respond(request);
+                    pending.add(ByteBuffer.wrap(response.headerBytes()));
+                    FileRegion bodyFile = response.getBodyFile();
+                    if (bodyFile != null) {
+                        try {
+                            writePending();
+                            while (!bodyFile.transferTo(writeToNet)) {
+                                // a blocking channel takes everything, nothing to wait for
+                            }
+                        } finally {
+                            bodyFile.close();
                         }
-                        writeToNet.println("<HTML><HEAD><TITLE>File Not Found</TITLE></HEAD>");
-                        writeToNet.println("<BODY><H1>HTTP Error 404: File Not Found</H1></BODY></HTML>");
-                        writeToNet.close();
-                        System.err.println("File: " + fileToServe + " not found\n");
-                    }
-                } else {
-                    // Method doesn't equal "GET"
-                    if (version.startsWith("HTTP/")) {
-                        // send a MIME header
-                        writeToNet.print("HTTP/1.0 501 Not Implemented\r\n");
-                        writeToNet.print("Date: " + new Date() + "\r\n");
-                        writeToNet.print("Server: MyWebServer Version Feb 2000\r\n");
-                        writeToNet.print("Content-type: text/html" + "\r\n\r\n");
+                    } else {
+                        pending.add(response.getBody());
                     }
 
-                    writeToNet.println("<HTML><HEAD><TITLE>Not Implemented</TITLE></HEAD>");
-                    writeToNet.println("<BODY><H1>HTTP Error 501: Not Implemented</H1></BODY></HTML>");
-                    writeToNet.close();
-
-                    System.err.println("Method: " + httpMethod + " is not supported\n");
-
+                    // pipelined requests that are already here are answered before writing
+                    if (!readFromNet.ready()) {
+                        writePending();
+                    }
+                    keepAlive = request.isKeepAlive();
                 }
+                writePending();
             } catch (IOException e) {
             }
 
@@ -172,23 +309,87 @@ public class SimpleWebServer extends GenericServer {
         }
 
         /**
-         * The method <code>guessContentTypeFromName()</code> returns the
-         * MIME-type of a file, which is guessed from the file's extention.
+         * Writes the pending buffers with gathering writes, if the channel supports them
          */
-        public String guessContentTypeFromName(String name) {
-            if (name.endsWith(".html") || name.endsWith(".htm")) {
-                return "text/html";
-            } else if (name.endsWith(".txt") || name.endsWith(".java")) {
-                return "text/plain";
-            } else if (name.endsWith(".gif")) {
-                return "image/gif";
-            } else if (name.endsWith(".class")) {
-                return "application/octet-stream";
-            } else if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
-                return "image/jpeg";
+        void writePending() throws IOException {
+            if (writeToNet instanceof GatheringByteChannel) {
+                ByteBuffer[] buffers = pending.toArray(new ByteBuffer[0]);
+                long remaining = 0;
+                for (ByteBuffer buffer : buffers) {
+                    remaining += buffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= ((GatheringByteChannel) writeToNet).write(buffers);
+                }
             } else {
-                return "text/plain";
+                for (ByteBuffer buffer : pending) {
+                    while (buffer.hasRemaining()) {
+                        writeToNet.write(buffer);
+                    }
+                }
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Inner Class [HttpHandler] Processes the requests of one connection in reactor mode,
+     * including pipelined requests on keep-alive connections
+     */
+    class HttpHandler implements NonBlockingHandler {
+
+        public void dataReceived(ByteBuffer input, NioConnection connection) throws IOException {
+            // answer every complete request in the buffer, in order; a partial one waits for more data
+            int end;
+            while (connection.isOpen() && (end = endOfHead(input)) != -1) {
+                byte[] head = new byte[end - input.position()];
+                input.get(head);
+                skipEmptyLines(input);
+
+                HttpRequest request = HttpRequest.parse(new String(head, StandardCharsets.ISO_8859_1));
+                HttpResponse response = respond(request);
+                if (response.getBodyFile() != null) {
+                    connection.send(ByteBuffer.wrap(response.headerBytes()));
+                    connection.send(response.getBodyFile());
+                } else {
+                    connection.send(ByteBuffer.wrap(response.headerBytes()), response.getBody());
+                }
+
+                if (!request.isKeepAlive()) {
+                    // anything pipelined after this request is dropped
+                    input.position(input.limit());
+                    connection.closeWhenFlushed();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Moves past line ends, i.e. the end of a head or empty lines between requests
+         */
+        void skipEmptyLines(ByteBuffer input) {
+            while (input.hasRemaining() && (input.get(input.position()) == '\r' || input.get(input.position()) == '\n')) {
+                input.get();
+            }
+        }
+
+        /**
+         * Position of the empty line that ends the head, -1 if it has not arrived yet
+         */
+        int endOfHead(ByteBuffer input) {
+            skipEmptyLines(input);
+            for (int i = input.position(); i < input.limit(); i++) {
+                if (input.get(i) != '\n') {
+                    continue;
+                }
+                if (i + 1 < input.limit() && input.get(i + 1) == '\n') {
+                    return i;
+                }
+                if (i + 2 < input.limit() && input.get(i + 1) == '\r' && input.get(i + 2) == '\n') {
+                    return i;
+                }
             }
+            return -1;
         }
     }
     